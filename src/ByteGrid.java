@@ -0,0 +1,127 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+// A rectangular grid of single-byte cells stored row-major in one flat array.
+// The cell at (row, col) lives at index row * stride + col, where the stride is the number of columns.
+// Several puzzles (e.g. Day 8 and Day 12) have inputs that are just a block of characters,
+// so this lets them read their input in a single pass and store it with one byte per cell
+// rather than as an int[][] or char[][] with a separate array per row.
+// Since it's one array indexed by int, a grid holds at most Integer.MAX_VALUE cells, and load only accepts
+// files up to 2 GB.
+public class ByteGrid {
+    private final byte[] cells;
+    private final int rows;
+    private final int cols;
+
+    public ByteGrid(int rows, int cols) {
+        this(new byte[Math.multiplyExact(rows, cols)], rows, cols);
+    }
+
+    private ByteGrid(byte[] cells, int rows, int cols) {
+        this.cells = cells;
+        this.rows = rows;
+        this.cols = cols;
+    }
+
+    // Loads the grid as-is, so each cell holds the raw character from the input (e.g. 'a'..'z', 'S', 'E').
+    public static ByteGrid load(File file) throws IOException {
+        return load(file, (byte) 0);
+    }
+
+    // Loads a grid of digits, so each cell holds the digit's value (0-9) rather than its character ('0'-'9').
+    public static ByteGrid loadDigits(File file) throws IOException {
+        return load(file, (byte) '0');
+    }
+
+    // Maps the file into memory and copies it into the grid one row at a time, skipping over line terminators.
+    // The number of columns is the length of the first line, and every line after that is expected
+    // to be the same length (with the same line terminator), which lets us work out the number of rows
+    // up front instead of reading the file twice.
+    private static ByteGrid load(File file, byte bias) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Grid input is larger than 2 GB: " + file);
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            int size = (int) fileSize;
+
+            // Find the end of the first line to get the width of the grid and the line terminator used.
+            int cols = 0;
+            while (cols < size && buffer.get(cols) != '\n' && buffer.get(cols) != '\r') {
+                cols++;
+            }
+            int terminatorLength = 0;
+            if (cols < size && buffer.get(cols) == '\r') terminatorLength++;
+            if (cols + terminatorLength < size && buffer.get(cols + terminatorLength) == '\n') terminatorLength++;
+
+            if (cols == 0) {
+                return new ByteGrid(0, 0);
+            }
+
+            // Ignore any line terminators (or blank lines) at the very end of the file. What's left has to be
+            // exactly the rows of the grid with a line terminator between each pair of them.
+            int contentSize = size;
+            while (contentSize > 0 && (buffer.get(contentSize - 1) == '\n' || buffer.get(contentSize - 1) == '\r')) {
+                contentSize--;
+            }
+
+            int lineLength = cols + terminatorLength;
+            int rows = (contentSize + terminatorLength) / lineLength;
+            if ((long) rows * lineLength - terminatorLength != contentSize) {
+                throw new IOException("Lines of " + file + " are not all " + cols + " characters long");
+            }
+
+            byte[] cells = new byte[Math.multiplyExact(rows, cols)];
+            for (int r = 0; r < rows; r++) {
+                int lineStart = r * lineLength;
+                buffer.get(lineStart, cells, r * cols, cols);
+
+                int next = lineStart + cols;
+                if (next < contentSize && buffer.get(next) != '\r' && buffer.get(next) != '\n') {
+                    throw new IOException("Line " + (r + 1) + " of " + file + " is not " + cols + " characters long");
+                }
+            }
+
+            if (bias != 0) {
+                for (int i = 0; i < cells.length; i++) {
+                    cells[i] -= bias;
+                }
+            }
+
+            return new ByteGrid(cells, rows, cols);
+        }
+    }
+
+    public int getRows() { return this.rows; }
+    public int getCols() { return this.cols; }
+    public int size() { return this.cells.length; }
+
+    // The distance between vertically adjacent cells in the flat array.
+    public int stride() { return this.cols; }
+
+    public int index(int row, int col) { return row * cols + col; }
+    public int row(int index) { return index / cols; }
+    public int col(int index) { return index % cols; }
+
+    public boolean inBounds(int row, int col) {
+        return row >= 0 && row < rows && col >= 0 && col < cols;
+    }
+
+    public byte get(int index) { return cells[index]; }
+    public byte get(int row, int col) { return cells[row * cols + col]; }
+    public void set(int index, byte value) { cells[index] = value; }
+    public void set(int row, int col, byte value) { cells[row * cols + col] = value; }
+
+    // Returns the index of the first cell holding the given value, or -1 if there isn't one.
+    public int indexOf(byte value) {
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] == value) return i;
+        }
+        return -1;
+    }
+}
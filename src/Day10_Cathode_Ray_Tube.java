@@ -1,12 +1,40 @@
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
+import java.util.function.Consumer;
+import java.util.function.IntBinaryOperator;
 
+// The instructions the CPU understands, along with how many cycles each one takes
+// and what it does to the X register once it's done.
 enum Command {
-    NOOP, ADDX
+    NOOP("noop", 1, (registerValue, operand) -> registerValue),
+    ADDX("addx", 2, (registerValue, operand) -> registerValue + operand);
+
+    private final String mnemonic;
+    private final int cycles;
+    private final IntBinaryOperator effect;
+
+    Command(String mnemonic, int cycles, IntBinaryOperator effect) {
+        this.mnemonic = mnemonic;
+        this.cycles = cycles;
+        this.effect = effect;
+    }
+
+    public String getMnemonic() { return this.mnemonic; }
+    public int getCycles() { return this.cycles; }
+    public IntBinaryOperator getEffect() { return this.effect; }
+
+    public static Command fromMnemonic(String mnemonic) {
+        for (Command command : values()) {
+            if (command.mnemonic.equals(mnemonic)) return command;
+        }
+        throw new IllegalArgumentException("Unknown instruction: " + mnemonic);
+    }
 }
 
 class CommandEntry {
@@ -30,9 +58,302 @@ class CommandEntry {
     }
 }
 
+// Called by the CPU once during every cycle with the value of the X register during that cycle.
+@FunctionalInterface
+interface CycleListener {
+    void onCycle(long cycle, int registerValue);
+}
+
+// A table of opcodes, each with a cycle cost and an effect on the X register. Opcodes are just indices into
+// the table, so the CPU can look up everything about an instruction with a couple of array reads.
+// The standard set contains every Command (with the opcode being its ordinal), and more can be registered.
+class InstructionSet {
+    private final List<String> mnemonics = new ArrayList<>();
+    private int[] cycles = new int[0];
+    private IntBinaryOperator[] effects = new IntBinaryOperator[0];
+
+    public static InstructionSet standard() {
+        InstructionSet instructionSet = new InstructionSet();
+        for (Command command : Command.values()) {
+            instructionSet.register(command.getMnemonic(), command.getCycles(), command.getEffect());
+        }
+        return instructionSet;
+    }
+
+    // Adds a new instruction and returns its opcode.
+    public int register(String mnemonic, int cycleCost, IntBinaryOperator effect) {
+        if (cycleCost < 1) {
+            throw new IllegalArgumentException("Instructions must take at least one cycle: " + mnemonic);
+        }
+        if (mnemonics.contains(mnemonic)) {
+            throw new IllegalArgumentException("Instruction is already registered: " + mnemonic);
+        }
+
+        int opcode = mnemonics.size();
+        mnemonics.add(mnemonic);
+        cycles = Arrays.copyOf(cycles, opcode + 1);
+        effects = Arrays.copyOf(effects, opcode + 1);
+        cycles[opcode] = cycleCost;
+        effects[opcode] = effect;
+        return opcode;
+    }
+
+    public int opcodeOf(String mnemonic) {
+        int opcode = mnemonics.indexOf(mnemonic);
+        if (opcode < 0) {
+            throw new IllegalArgumentException("Unknown instruction: " + mnemonic);
+        }
+        return opcode;
+    }
+
+    public int size() { return mnemonics.size(); }
+    public int cyclesOf(int opcode) { return cycles[opcode]; }
+    public IntBinaryOperator effectOf(int opcode) { return effects[opcode]; }
+
+    // Decodes the program into a flat instruction stream of (opcode, operand) pairs.
+    public int[] decode(List<CommandEntry> entries) {
+        int[] program = new int[entries.size() * 2];
+        for (int i = 0; i < entries.size(); i++) {
+            CommandEntry entry = entries.get(i);
+            program[i * 2] = opcodeOf(entry.getCommand().getMnemonic());
+            program[i * 2 + 1] = entry.getValue();
+        }
+        return program;
+    }
+
+    // Decodes lines of source (e.g. "addx 3") directly, which also works for registered instructions
+    // that don't have a Command.
+    public int[] assemble(List<String> lines) {
+        int[] program = new int[lines.size() * 2];
+        for (int i = 0; i < lines.size(); i++) {
+            String[] tokens = lines.get(i).split(" ");
+            program[i * 2] = opcodeOf(tokens[0]);
+            program[i * 2 + 1] = tokens.length > 1 ? Integer.parseInt(tokens[1]) : 0;
+        }
+        return program;
+    }
+}
+
+// Runs a decoded instruction stream. The instruction set's tables are copied into arrays up front,
+// and the main loop only reads from those arrays and the program, so running a program doesn't allocate
+// anything no matter how many instructions it has.
+class CathodeRayCpu {
+    private static final int INITIAL_REGISTER_VALUE = 1;
+
+    private final int[] cycles;
+    private final IntBinaryOperator[] effects;
+
+    public CathodeRayCpu(InstructionSet instructionSet) {
+        int opcodeCount = instructionSet.size();
+        cycles = new int[opcodeCount];
+        effects = new IntBinaryOperator[opcodeCount];
+        for (int opcode = 0; opcode < opcodeCount; opcode++) {
+            cycles[opcode] = instructionSet.cyclesOf(opcode);
+            effects[opcode] = instructionSet.effectOf(opcode);
+        }
+    }
+
+    // Returns the number of cycles the program takes to run.
+    public long countCycles(int[] program) {
+        long total = 0;
+        for (int pc = 0; pc < program.length; pc += 2) {
+            total += cycles[program[pc]];
+        }
+        return total;
+    }
+
+    // Runs the program, calling the listener during every cycle, and returns the final value of the X register.
+    // An instruction's effect on the register only applies once all of its cycles are done.
+    public int run(int[] program, CycleListener listener) {
+        int registerValue = INITIAL_REGISTER_VALUE;
+        long cycle = 0;
+
+        for (int pc = 0; pc < program.length; pc += 2) {
+            int opcode = program[pc];
+            for (int i = cycles[opcode]; i > 0; i--) {
+                listener.onCycle(++cycle, registerValue);
+            }
+            registerValue = effects[opcode].applyAsInt(registerValue, program[pc + 1]);
+        }
+
+        return registerValue;
+    }
+}
+
+// Sums up the signal strengths during the given cycles as the program runs, without storing anything else.
+// This is useful when the program is too long to keep a RegisterTimeline of it.
+class SignalSampler implements CycleListener {
+    private final long[] probeCycles;
+    private int nextProbe;
+    private long sum;
+
+    public SignalSampler(long[] probeCycles) {
+        this.probeCycles = probeCycles.clone();
+        Arrays.sort(this.probeCycles);
+    }
+
+    public long getSum() { return this.sum; }
+
+    @Override
+    public void onCycle(long cycle, int registerValue) {
+        // Skip any probes for cycles that have already gone by (or that never happen, like cycle 0),
+        // so they don't hold up the probes after them.
+        while (nextProbe < probeCycles.length && probeCycles[nextProbe] < cycle) {
+            nextProbe++;
+        }
+
+        while (nextProbe < probeCycles.length && probeCycles[nextProbe] == cycle) {
+            sum += cycle * registerValue;
+            nextProbe++;
+        }
+    }
+}
+
+// A monochrome screen of any size, with each row of pixels packed into 64-bit words.
+class Framebuffer {
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] pixels;
+
+    public Framebuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + Long.SIZE - 1) / Long.SIZE;
+        this.pixels = new long[wordsPerRow * height];
+    }
+
+    public int getWidth() { return this.width; }
+    public int getHeight() { return this.height; }
+
+    public boolean isLit(int x, int y) {
+        return (pixels[y * wordsPerRow + x / Long.SIZE] & (1L << (x % Long.SIZE))) != 0;
+    }
+
+    public void set(int x, int y, boolean lit) {
+        int word = y * wordsPerRow + x / Long.SIZE;
+        long bit = 1L << (x % Long.SIZE);
+        pixels[word] = lit ? pixels[word] | bit : pixels[word] & ~bit;
+    }
+
+    public void clear() {
+        Arrays.fill(pixels, 0);
+    }
+
+    // Renders the screen as text, one line per row, with the separator after every pixel.
+    public String render(char litPixel, char unlitPixel, String separator) {
+        StringBuilder sb = new StringBuilder(height * (width * (1 + separator.length()) + 1));
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                sb.append(isLit(x, y) ? litPixel : unlitPixel).append(separator);
+            }
+            sb.append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    // Writes the screen as a binary PBM image (lit pixels are black), which most image viewers can open.
+    public void writePbm(File file) throws IOException {
+        byte[] header = ("P4\n" + width + " " + height + "\n").getBytes(StandardCharsets.US_ASCII);
+        int bytesPerRow = (width + 7) / 8;
+        byte[] image = Arrays.copyOf(header, header.length + bytesPerRow * height);
+
+        // PBM packs 8 pixels per byte with the leftmost pixel in the most significant bit.
+        for (int y = 0; y < height; y++) {
+            int rowStart = header.length + y * bytesPerRow;
+            for (int x = 0; x < width; x++) {
+                if (isLit(x, y)) {
+                    image[rowStart + x / 8] |= (byte) (0x80 >>> (x % 8));
+                }
+            }
+        }
+
+        Files.write(file.toPath(), image);
+    }
+}
+
+// Draws one pixel per cycle onto a framebuffer, scanning left to right and top to bottom. A pixel is lit
+// if the sprite (three pixels wide, centered on the value of the X register) covers it while it's being drawn.
+// Once the last pixel of the screen is drawn, the finished frame is handed to the frame consumer and
+// the CRT starts over at the top-left for the next frame, so long programs can be rendered as animations.
+class CrtRenderer implements CycleListener {
+    private final Framebuffer framebuffer;
+    private final Consumer<Framebuffer> onFrame;
+    private final long pixelsPerFrame;
+
+    public CrtRenderer(Framebuffer framebuffer, Consumer<Framebuffer> onFrame) {
+        this.framebuffer = framebuffer;
+        this.onFrame = onFrame;
+        this.pixelsPerFrame = (long) framebuffer.getWidth() * framebuffer.getHeight();
+    }
+
+    @Override
+    public void onCycle(long cycle, int registerValue) {
+        long pixel = (cycle - 1) % pixelsPerFrame;
+        int row = (int) (pixel / framebuffer.getWidth());
+        int column = (int) (pixel % framebuffer.getWidth());
+
+        framebuffer.set(column, row, Math.abs(column - registerValue) <= 1);
+
+        if (pixel == pixelsPerFrame - 1) {
+            onFrame.accept(framebuffer);
+        }
+    }
+}
+
+// The value of the X register during every cycle of a program, compiled in a single pass over the program.
+// Since instructions only ever change X at the end of their last cycle, X is constant between changes,
+// so once this is built, we can look up X during any cycle without running the program again.
+class RegisterTimeline {
+    // values[c] is the value of X during cycle c (cycles start at 1, so values[0] is unused).
+    private final int[] values;
+
+    private RegisterTimeline(int[] values) {
+        this.values = values;
+    }
+
+    public static RegisterTimeline compile(CathodeRayCpu cpu, int[] program) {
+        // Work out how many cycles the program takes so we can size the timeline exactly.
+        long totalCycles = cpu.countCycles(program);
+        if (totalCycles >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Program is too long for a timeline: " + totalCycles + " cycles");
+        }
+
+        int[] values = new int[(int) totalCycles + 1];
+        cpu.run(program, (cycle, registerValue) -> values[(int) cycle] = registerValue);
+
+        return new RegisterTimeline(values);
+    }
+
+    public int getCycleCount() { return values.length - 1; }
+
+    // Returns the value of the X register during the given cycle.
+    public int valueDuring(int cycle) {
+        return values[cycle];
+    }
+
+    // Returns the signal strength (the cycle number multiplied by the value of X) during the given cycle.
+    public long signalStrength(int cycle) {
+        return (long) cycle * values[cycle];
+    }
+
+    // Returns the sum of the signal strengths during each of the given cycles.
+    // Cycles past the end of the program are ignored.
+    public long sumSignalStrengths(int[] cycles) {
+        long sum = 0;
+        for (int cycle : cycles) {
+            if (cycle >= 1 && cycle <= getCycleCount()) {
+                sum += signalStrength(cycle);
+            }
+        }
+        return sum;
+    }
+}
+
 public class Day10_Cathode_Ray_Tube {
     private static final int SCREEN_PIXEL_HEIGHT = 6;
     private static final int SCREEN_PIXEL_WIDTH = 40;
+    private static final int[] SIGNAL_STRENGTH_CYCLES = {20, 60, 100, 140, 180, 220};
 
     // The problem description uses '#' by default but modified here for increased readability.
     private static final char LIT_PIXEL = '█';
@@ -51,129 +372,50 @@ public class Day10_Cathode_Ray_Tube {
                 String line = sc.nextLine();
                 String[] tokens = line.split(" ");
 
-                if (tokens[0].equals("noop")) {
-                    entries.add(new CommandEntry(Command.NOOP));
-                } else if (tokens[0].equals("addx")) {
-                    entries.add(new CommandEntry(Command.ADDX, Integer.parseInt(tokens[1])));
+                Command command = Command.fromMnemonic(tokens[0]);
+                if (tokens.length > 1) {
+                    entries.add(new CommandEntry(command, Integer.parseInt(tokens[1])));
+                } else {
+                    entries.add(new CommandEntry(command));
                 }
             }
 
-            int part1 = part1(entries);
+            // Decode the program and run it once, recording the value of the register during every cycle.
+            InstructionSet instructionSet = InstructionSet.standard();
+            CathodeRayCpu cpu = new CathodeRayCpu(instructionSet);
+            RegisterTimeline timeline = RegisterTimeline.compile(cpu, instructionSet.decode(entries));
+
+            long part1 = part1(timeline);
             System.out.println("Part 1 is: " + part1);
 
             System.out.println("Part 2 is: ");
-            part2(entries);
+            part2(timeline);
 
         } catch (IOException exception) {
             exception.printStackTrace();
         }
     }
 
-    //
-    private static int calculateSignalStrength(int currentCycle, int currentRegisterValue) {
-        List<Integer> executionCycles = Arrays.asList(20, 60, 100, 140, 180, 220);
-        if (executionCycles.contains(currentCycle)) {
-            return currentCycle * currentRegisterValue;
-        }
-
-        return 0;
-    }
-
     // Part 1: Calculates the sum of the signal strength at the 20th, 60th, 100th, 140th, 180th, 220th cycles.
-    private static int part1(List<CommandEntry> entries) {
-        int registerValue = 1;
-        int currentCycle = 0;
-        int signalStrengthSum = 0;
-
-        // For each command entry, execute the specified number of cycles,
-        // calculate the signal strength, and set the register value.
-        for (CommandEntry entry : entries) {
-            if (entry.getCommand().equals(Command.NOOP)) {
-                currentCycle++;
-                signalStrengthSum += calculateSignalStrength(currentCycle, registerValue);
-            } else if (entry.getCommand().equals(Command.ADDX)) {
-                currentCycle++;
-                signalStrengthSum += calculateSignalStrength(currentCycle, registerValue);
-
-                currentCycle++;
-                signalStrengthSum += calculateSignalStrength(currentCycle, registerValue);
-
-                registerValue += entry.getValue();
-            }
-        }
-
-        return signalStrengthSum;
-    }
-
-    // Helper method to initialize a screen with unlit pixel characters.
-    private static void initializeScreen(char[][] screen) {
-        for (char[] chars : screen) {
-            Arrays.fill(chars, UNLIT_PIXEL);
-        }
-    }
-
-    // Helper method to print the screen pixels to the console.
-    private static void printScreen(char[][] screen) {
-        for (char[] row : screen) {
-            for (char c : row) {
-                System.out.print(c + " ");
-            }
-            System.out.println();
-        }
-    }
-
-    // Returns true if the position of the sprite (represented by three pixels centered around the register value)
-    // is within the pixel that is currently being drawn (represented by the current cycle).
-    private static boolean isSpriteOverlappingPixelDrawing(int currentCycle, int registerValue) {
-        // Must do some modulo arithmetic to calculate the pixel that is currently being drawn.
-        int pixel = (currentCycle - 1) % SCREEN_PIXEL_WIDTH;
-
-        return pixel == registerValue ||
-                pixel == registerValue - 1 ||
-                pixel == registerValue + 1;
-    }
-
-    // Draws a pixel on the screen.
-    private static void drawPixel(char[][] screen, int currentCycle, int registerValue) {
-        // Modulo arithmetic to calculate the array indices that is currently being drawn.
-        int row = (currentCycle-1) / SCREEN_PIXEL_WIDTH;
-        int column = (currentCycle-1) % SCREEN_PIXEL_WIDTH;
-
-        // If the pixel we are drawing is overlapping a sprite, then draw a lit pixel.
-        // Otherwise, draw an unlit pixel.
-        if (isSpriteOverlappingPixelDrawing(currentCycle, registerValue)) {
-            screen[row][column] = LIT_PIXEL;
-        } else {
-            screen[row][column] = UNLIT_PIXEL;
-        }
+    // Each one is just a lookup into the timeline, so this is cheap no matter how many cycles we're asked about.
+    private static long part1(RegisterTimeline timeline) {
+        return timeline.sumSignalStrengths(SIGNAL_STRENGTH_CYCLES);
     }
 
     // Part 2: Prints the resulting pixels of the CRT screen to the console
     // after executing all the input commands. Pixels are considered lit if at the time it is
     // being drawn, there is a sprite overlapping at that location.
-    private static void part2(List<CommandEntry> entries) {
-        char[][] screen = new char[SCREEN_PIXEL_HEIGHT][SCREEN_PIXEL_WIDTH];
-        initializeScreen(screen);
-
-        int registerValue = 1;
-        int currentCycle = 0;
-
-        // For each command entry, execute the specified number of cycles, draw pixels, and set the register value.
-        for (CommandEntry entry : entries) {
-            if (entry.getCommand().equals(Command.NOOP)) {
-                currentCycle++;
-                drawPixel(screen, currentCycle, registerValue);
-            } else if (entry.getCommand().equals(Command.ADDX)) {
-                currentCycle++;
-                drawPixel(screen, currentCycle, registerValue);
-
-                currentCycle++;
-                drawPixel(screen, currentCycle, registerValue);
-
-                registerValue += entry.getValue();
-            }
+    private static void part2(RegisterTimeline timeline) {
+        Framebuffer screen = new Framebuffer(SCREEN_PIXEL_WIDTH, SCREEN_PIXEL_HEIGHT);
+        CrtRenderer crt = new CrtRenderer(screen, frame -> { });
+
+        // The CRT draws one pixel per cycle, so we just need the value of the register during each of those cycles.
+        int cycles = Math.min(timeline.getCycleCount(), screen.getWidth() * screen.getHeight());
+        for (int currentCycle = 1; currentCycle <= cycles; currentCycle++) {
+            crt.onCycle(currentCycle, timeline.valueDuring(currentCycle));
         }
 
-        printScreen(screen);
+        // Build the whole screen up as one string and print it with a single write.
+        System.out.print(screen.render(LIT_PIXEL, UNLIT_PIXEL, " "));
     }
 }
\ No newline at end of file
@@ -1,41 +1,182 @@
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
-import java.util.function.Function;
+import java.util.function.LongUnaryOperator;
 
 enum MonkeyOperator {
-    MULTIPLY, ADD
+    MULTIPLY, ADD;
+
+    // Compiles "new = old <operator> operand" into a function, specialised up front for whether the operand
+    // is a constant or "old", so that applying it doesn't need to check either.
+    public LongUnaryOperator compile(long operand, boolean operandIsOld) {
+        if (this == MULTIPLY) {
+            return operandIsOld ? old -> old * old : old -> old * operand;
+        }
+        return operandIsOld ? old -> old + old : old -> old + operand;
+    }
+
+    // Same as compile, except that the result is kept modulo the given modulus. The worry level passed in
+    // must already be reduced, and the arithmetic is done so that it can never overflow (see ModularArithmetic).
+    public LongUnaryOperator compileModular(long operand, boolean operandIsOld, long modulus) {
+        long reducedOperand = Math.floorMod(operand, modulus);
+        if (this == MULTIPLY) {
+            return operandIsOld
+                    ? old -> ModularArithmetic.multiply(old, old, modulus)
+                    : old -> ModularArithmetic.multiply(old, reducedOperand, modulus);
+        }
+        return operandIsOld
+                ? old -> ModularArithmetic.add(old, old, modulus)
+                : old -> ModularArithmetic.add(old, reducedOperand, modulus);
+    }
+}
+
+// Arithmetic on values in the range [0, modulus) that never overflows, for any positive long modulus.
+class ModularArithmetic {
+    public static long add(long a, long b, long modulus) {
+        // Same as (a + b) % modulus, but without computing a + b, which can overflow if the modulus is huge.
+        return a >= modulus - b ? a - (modulus - b) : a + b;
+    }
+
+    public static long multiply(long a, long b, long modulus) {
+        // The common case: the full product fits in a long, so a plain multiplication is enough.
+        long high = Math.multiplyHigh(a, b);
+        long low = a * b;
+        if (high == 0 && low >= 0) {
+            return low % modulus;
+        }
+
+        // Otherwise, the product is the 128-bit number (high * 2^64 + low). We fold it in one bit at a time,
+        // starting from the high half, doubling the running remainder for each bit (using add, so that doubling
+        // can't overflow either).
+        long remainder = high % modulus;
+        for (int bit = Long.SIZE - 1; bit >= 0; bit--) {
+            remainder = add(remainder, remainder, modulus);
+            if (((low >>> bit) & 1) != 0) {
+                remainder = add(remainder, 1, modulus);
+            }
+        }
+        return remainder;
+    }
+
+    public static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    // Throws an ArithmeticException if the least common multiple doesn't fit in a long.
+    public static long lcm(long a, long b) {
+        return Math.multiplyExact(a / gcd(a, b), b);
+    }
+}
+
+// A first-in-first-out queue of worry levels backed by a circular long array, so adding and removing items
+// doesn't allocate (unlike a LinkedList<Long>, which needs a node and a boxed Long for every item).
+// The array only grows when it's full, and since the total number of items never changes,
+// the queues stop growing after the first few rounds. The capacity is always a power of two,
+// so wrapping around the end of the array is just a mask.
+class LongRingBuffer {
+    private long[] buffer;
+    private int head;
+    private int size;
+
+    public LongRingBuffer() {
+        this(16);
+    }
+
+    public LongRingBuffer(int initialCapacity) {
+        buffer = new long[Math.max(1, Integer.highestOneBit(Math.max(1, initialCapacity - 1)) << 1)];
+    }
+
+    public boolean isEmpty() { return size == 0; }
+    public int size() { return size; }
+
+    public void add(long value) {
+        if (size == buffer.length) {
+            grow();
+        }
+        buffer[(head + size) & (buffer.length - 1)] = value;
+        size++;
+    }
+
+    public long poll() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        long value = buffer[head];
+        head = (head + 1) & (buffer.length - 1);
+        size--;
+        return value;
+    }
+
+    public long get(int index) {
+        return buffer[(head + index) & (buffer.length - 1)];
+    }
+
+    // Copies the items into a bigger array, unwrapping them so that the head is at index 0 again.
+    private void grow() {
+        long[] bigger = new long[buffer.length * 2];
+        for (int i = 0; i < size; i++) {
+            bigger[i] = get(i);
+        }
+        buffer = bigger;
+        head = 0;
+    }
+
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", "[", "]");
+        for (int i = 0; i < size; i++) {
+            joiner.add(String.valueOf(get(i)));
+        }
+        return joiner.toString();
+    }
 }
 
 // Class to represent a monkey and its related metadata, parsed from the input file.
 class Monkey {
     private final int id;
-    private final LinkedList<Long> items;
+    private final LongRingBuffer items;
     private MonkeyOperator operator;
-    private int rightOperand;
-    private int divisor;
+    private long rightOperand;
+    private boolean rightOperandIsOld;
+    private LongUnaryOperator operation;
+    private long divisor;
     private int trueMonkey;
     private int falseMonkey;
     private long numItemsInspected;
 
     public Monkey(int id) {
         this.id = id;
-        this.items = new LinkedList<>();
+        this.items = new LongRingBuffer();
         this.numItemsInspected = 0;
     }
 
     public int getId() { return this.id; }
-    public LinkedList<Long> getItems() { return items; }
+    public LongRingBuffer getItems() { return items; }
     public void addItem(long item) { items.add(item); }
 
     public MonkeyOperator getOperator() { return operator; }
-    public void setOperator(MonkeyOperator operator) { this.operator = operator; }
+    public long getRightOperand() { return rightOperand; }
+    public boolean isRightOperandOld() { return rightOperandIsOld; }
+
+    // Sets the monkey's operation and compiles it, so it's ready to be applied to every item.
+    public void setOperation(MonkeyOperator operator, long rightOperand, boolean rightOperandIsOld) {
+        this.operator = operator;
+        this.rightOperand = rightOperand;
+        this.rightOperandIsOld = rightOperandIsOld;
+        this.operation = operator.compile(rightOperand, rightOperandIsOld);
+    }
 
-    public int getRightOperand() { return rightOperand; }
-    public void setRightOperand(int rightOperand) { this.rightOperand = rightOperand; }
+    // Compiles the monkey's operation for worry levels that are kept modulo the given modulus.
+    public LongUnaryOperator compileModularOperation(long modulus) {
+        return operator.compileModular(rightOperand, rightOperandIsOld, modulus);
+    }
 
-    public int getDivisor() { return divisor; }
-    public void setDivisor(int divisor) { this.divisor = divisor; }
+    public long getDivisor() { return divisor; }
+    public void setDivisor(long divisor) { this.divisor = divisor; }
 
     public int getTrueMonkey() { return trueMonkey; }
     public void setTrueMonkey(int trueMonkey) { this.trueMonkey = trueMonkey; }
@@ -43,20 +184,215 @@ class Monkey {
     public int getFalseMonkey() { return falseMonkey; }
     public void setFalseMonkey(int falseMonkey) { this.falseMonkey = falseMonkey; }
 
+    // Returns the worry level after this monkey's operation is applied to the given worry level.
+    public long applyOperation(long old) {
+        return operation.applyAsLong(old);
+    }
+
+    // Returns the monkey this monkey throws the item with the given worry level to.
+    public int chooseTarget(long worry) {
+        return worry % divisor == 0 ? trueMonkey : falseMonkey;
+    }
+
     public long getNumItemsInspected() { return numItemsInspected; }
     public void incrementNumItemsInspected() { numItemsInspected++; }
 
     public String toString() {
         return "\n" + id + ":\nItems: " + items + "\n" +
                 "Operator: " + operator + "\n" +
-                "Right operand: " + rightOperand + "\n" +
+                "Right operand: " + (rightOperandIsOld ? "old" : rightOperand) + "\n" +
                 "Divisor: " + divisor + "\n" +
                 "True monkey: " + trueMonkey + "\n" +
                 "False monkey: " + falseMonkey + "\n";
     }
 }
 
+// Simulates the monkeys (with the part 2 rules) by following each item on its own, rather than
+// round-by-round for all items at once. This works because what happens to an item only depends on its own
+// worry level and the monkeys' rules, never on the other items, and the inspection counts are just sums over
+// all the items. The one subtlety is the order within a round: the monkeys take their turns in order of id,
+// so an item thrown to a monkey with a higher id gets inspected again in the same round, while an item thrown
+// to a monkey with a lower (or the same) id has to wait until the next round.
+// Since the items are independent, they're traced in parallel, each thread counting inspections into its own
+// array, and the arrays are added together at the end.
+//
+// At the start of each round, an item's entire state is just which monkey is holding it and its worry level
+// modulo the common multiple. There are only finitely many such states, so every item eventually loops back to
+// a state it has already been in, and from then on it repeats the same rounds (and inspections) forever.
+// So we find where each item's loop starts and how long it is, count the inspections for one trip around
+// the loop, and multiply that out. That way, even 10^12 rounds only take as long as the loop is.
+class ItemTracer {
+    private final List<Monkey> monkeys;
+    private final long commonMultiple;
+    private final LongUnaryOperator[] operations;
+
+    // Whether (worry, monkey id) states fit into a single long. If they don't, we can't detect loops
+    // and have to run every round.
+    private final boolean packable;
+
+    public ItemTracer(List<Monkey> monkeys) {
+        this.monkeys = monkeys;
+
+        // See part 2 for why we can keep worry levels modulo a common multiple of the divisors.
+        // The least common multiple is the smallest one that works.
+        long lcm = 1L;
+        for (Monkey m : monkeys) {
+            lcm = ModularArithmetic.lcm(lcm, m.getDivisor());
+        }
+        this.commonMultiple = lcm;
+
+        operations = new LongUnaryOperator[monkeys.size()];
+        for (int i = 0; i < monkeys.size(); i++) {
+            operations[i] = monkeys.get(i).compileModularOperation(commonMultiple);
+        }
+
+        packable = commonMultiple <= (Long.MAX_VALUE - monkeys.size()) / monkeys.size();
+    }
+
+    // Returns the number of items each monkey inspects over the given number of rounds, indexed by monkey id.
+    public long[] countInspections(long rounds) {
+        // Gather up every item's starting monkey and (reduced) worry level.
+        List<long[]> items = new ArrayList<>();
+        for (Monkey monkey : monkeys) {
+            LongRingBuffer monkeyItems = monkey.getItems();
+            for (int i = 0; i < monkeyItems.size(); i++) {
+                items.add(new long[] { monkey.getId(), Math.floorMod(monkeyItems.get(i), commonMultiple) });
+            }
+        }
+
+        int monkeyCount = monkeys.size();
+        return items.parallelStream().collect(
+                () -> new long[monkeyCount],
+                (counts, item) -> {
+                    if (packable) {
+                        trace(packState((int) item[0], item[1]), rounds, counts);
+                    } else {
+                        traceEveryRound((int) item[0], item[1], rounds, counts);
+                    }
+                },
+                (counts, otherCounts) -> {
+                    for (int i = 0; i < monkeyCount; i++) {
+                        counts[i] += otherCounts[i];
+                    }
+                });
+    }
+
+    // Follows a single item from the given state through the given number of rounds, adding every inspection
+    // to the counts. We first look for the item's loop using Brent's cycle detection algorithm (which only needs
+    // to remember a couple of states). If it turns out that finding the loop would take longer than just
+    // running the rounds, we run the rounds directly instead.
+    private void trace(long start, long rounds, long[] counts) {
+        // Find the length of the loop (lambda).
+        long power = 1;
+        long lambda = 1;
+        long tortoise = start;
+        long hare = advanceRound(start, null);
+        long steps = 1;
+
+        while (tortoise != hare) {
+            if (steps > rounds) {
+                advanceRounds(start, rounds, counts);
+                return;
+            }
+            if (power == lambda) {
+                tortoise = hare;
+                power *= 2;
+                lambda = 0;
+            }
+            hare = advanceRound(hare, null);
+            lambda++;
+            steps++;
+        }
+
+        // Find the first round of the loop (mu) by walking two states that are lambda rounds apart
+        // until they meet.
+        tortoise = start;
+        hare = advanceRounds(start, lambda, null);
+        long mu = 0;
+        while (tortoise != hare && mu < rounds) {
+            tortoise = advanceRound(tortoise, null);
+            hare = advanceRound(hare, null);
+            mu++;
+        }
+
+        if (mu + lambda >= rounds) {
+            advanceRounds(start, rounds, counts);
+            return;
+        }
+
+        // Run up to the start of the loop, then go around the loop once to count the inspections in it.
+        long loopStart = advanceRounds(start, mu, counts);
+        long[] loopCounts = new long[counts.length];
+        advanceRounds(loopStart, lambda, loopCounts);
+
+        long remainingRounds = rounds - mu;
+        long fullLoops = remainingRounds / lambda;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += fullLoops * loopCounts[i];
+        }
+
+        advanceRounds(loopStart, remainingRounds % lambda, counts);
+    }
+
+    // Follows a single item through every one of the given number of rounds, without looking for loops.
+    private void traceEveryRound(int monkeyId, long worry, long rounds, long[] counts) {
+        long round = 0;
+        while (round < rounds) {
+            counts[monkeyId]++;
+
+            worry = operations[monkeyId].applyAsLong(worry);
+            int nextMonkeyId = monkeys.get(monkeyId).chooseTarget(worry);
+
+            // Monkeys with a lower (or the same) id have already had their turn this round.
+            if (nextMonkeyId <= monkeyId) {
+                round++;
+            }
+            monkeyId = nextMonkeyId;
+        }
+    }
+
+    private long advanceRounds(long state, long rounds, long[] counts) {
+        for (long round = 0; round < rounds; round++) {
+            state = advanceRound(state, counts);
+        }
+        return state;
+    }
+
+    // Runs a single round for an item in the given state, returning its state at the start of the next round.
+    // The inspections are added to the counts unless the counts are null.
+    private long advanceRound(long state, long[] counts) {
+        int monkeyId = unpackMonkey(state);
+        long worry = unpackWorry(state);
+
+        while (true) {
+            if (counts != null) {
+                counts[monkeyId]++;
+            }
+
+            worry = operations[monkeyId].applyAsLong(worry);
+            int nextMonkeyId = monkeys.get(monkeyId).chooseTarget(worry);
+
+            // Monkeys with a lower (or the same) id have already had their turn this round.
+            if (nextMonkeyId <= monkeyId) {
+                return packState(nextMonkeyId, worry);
+            }
+            monkeyId = nextMonkeyId;
+        }
+    }
+
+    // An item's state is packed into a single long as (worry * number of monkeys + monkey id),
+    // so states can be compared and stored without allocating.
+    private long packState(int monkeyId, long worry) {
+        return worry * monkeys.size() + monkeyId;
+    }
+
+    private int unpackMonkey(long state) { return (int) (state % monkeys.size()); }
+    private long unpackWorry(long state) { return state / monkeys.size(); }
+}
+
 public class Day11_Monkey_in_the_Middle {
+    private static final long PART_2_ROUNDS = 10000;
+
     public static void main(String[] args) {
         File file = new File("./inputs/day11/day11.txt");
 
@@ -117,23 +453,18 @@ public class Day11_Monkey_in_the_Middle {
                     }
                     case "Operation" -> {  // Parse the operator and operand
                         String[] operatorTokens = tokens[1].split(" ");
-                        if (operatorTokens[3].equals("*")) {
-                            currentMonkey.setOperator(MonkeyOperator.MULTIPLY);
-                        } else if (operatorTokens[3].equals("+")) {
-                            currentMonkey.setOperator(MonkeyOperator.ADD);
-                        }
+                        MonkeyOperator operator = operatorTokens[3].equals("*") ? MonkeyOperator.MULTIPLY : MonkeyOperator.ADD;
 
-                        // If the right operand is "old" instead of a number,
-                        // we encode that using the max int.
+                        // The right operand is either a number or "old".
                         if (operatorTokens[4].equals("old")) {
-                            currentMonkey.setRightOperand(Integer.MAX_VALUE);
+                            currentMonkey.setOperation(operator, 0, true);
                         } else {
-                            currentMonkey.setRightOperand(Integer.parseInt(operatorTokens[4]));
+                            currentMonkey.setOperation(operator, Long.parseLong(operatorTokens[4]), false);
                         }
                     }
                     case "Test" -> {  // Parse the divisibility test divisor
                         String[] testDivisibilityTokens = tokens[1].split(" ");
-                        currentMonkey.setDivisor(Integer.parseInt(testDivisibilityTokens[2]));
+                        currentMonkey.setDivisor(Long.parseLong(testDivisibilityTokens[2]));
                     }
                     case "If true" -> {  // Parse the monkey id when true
                         String[] trueTokens = tokens[1].split(" ");
@@ -157,13 +488,18 @@ public class Day11_Monkey_in_the_Middle {
     // all the monkey item counts into a list, sorting the list in descending order
     // and multiplying the first two elements.
     private static long calculateMonkeyBusinessLevel(List<Monkey> monkeys) {
-        List<Long> numItemsInspected = new ArrayList<>();
-        for (Monkey m : monkeys) {
-            numItemsInspected.add(m.getNumItemsInspected());
+        long[] numItemsInspected = new long[monkeys.size()];
+        for (int i = 0; i < monkeys.size(); i++) {
+            numItemsInspected[i] = monkeys.get(i).getNumItemsInspected();
         }
 
-        numItemsInspected.sort((a,b) -> (int)(b-a));
-        return numItemsInspected.get(0) * numItemsInspected.get(1);
+        return calculateMonkeyBusinessLevel(numItemsInspected);
+    }
+
+    private static long calculateMonkeyBusinessLevel(long[] numItemsInspected) {
+        long[] sorted = numItemsInspected.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length - 1] * sorted[sorted.length - 2];
     }
 
     // Part 1: Simulate 20 rounds of monkey activity. Each monkey in turn will
@@ -172,19 +508,11 @@ public class Day11_Monkey_in_the_Middle {
     private static long part1(List<Monkey> monkeys) {
         for (int i = 0; i < 20; i++) {
             for (Monkey monkey : monkeys) {
-                LinkedList<Long> items = monkey.getItems();
+                LongRingBuffer items = monkey.getItems();
                 while (!items.isEmpty()) {
                     long item = items.poll();
 
-                    long worryDuringInspection = Long.MIN_VALUE;
-                    MonkeyOperator operator = monkey.getOperator();
-                    int rightOperand = monkey.getRightOperand();
-
-                    if (operator.equals(MonkeyOperator.ADD)) {
-                        worryDuringInspection = item + ((rightOperand < Integer.MAX_VALUE) ? rightOperand : item);
-                    } else if (operator.equals(MonkeyOperator.MULTIPLY)) {
-                        worryDuringInspection = item * ((rightOperand < Integer.MAX_VALUE) ? rightOperand : item);
-                    }
+                    long worryDuringInspection = monkey.applyOperation(item);
                     long worryAfterInspection = worryDuringInspection / 3;
 
                     int nextMonkeyId;
@@ -266,51 +594,15 @@ public class Day11_Monkey_in_the_Middle {
     (n mod 15) mod 5  0  1  2  3  4  0  1  2  3  4  0  1  2  3  4
 
     We see that (n mod 5) and (n mod 15) mod 5 generate the same values.
+
+    Finally, since each item's journey only depends on its own worry level, we don't simulate the rounds
+    for all the items at once. Instead, each item is traced through all 10,000 rounds on its own (in parallel,
+    see ItemTracer), and the inspection counts from all the items are added up. Once an item starts repeating
+    itself, its remaining rounds are extrapolated rather than simulated, so the number of rounds can be huge.
     */
     private static long part2(List<Monkey> monkeys) {
-        long commonMultiple = 1L;
-        for (Monkey m : monkeys) {
-            commonMultiple *= m.getDivisor();
-        }
-
-        for (int i = 0; i < 10000; i++) {
-            for (Monkey monkey : monkeys) {
-                LinkedList<Long> items = monkey.getItems();
-                while (!items.isEmpty()) {
-                    long item = items.poll();
-                    monkey.incrementNumItemsInspected();
-
-                    long worryDuringInspection  = item % commonMultiple;
-                    int rightOperand = monkey.getRightOperand();
-
-                    if (monkey.getOperator().equals(MonkeyOperator.ADD)) {
-                        if (rightOperand < Integer.MAX_VALUE) {
-                            worryDuringInspection += rightOperand % commonMultiple;
-                        } else {
-                            worryDuringInspection += item % commonMultiple;
-                        }
-                    } else if (monkey.getOperator().equals(MonkeyOperator.MULTIPLY)) {
-                        if (rightOperand < Integer.MAX_VALUE) {
-                            worryDuringInspection *= rightOperand % commonMultiple;
-                        } else {
-                            worryDuringInspection *= item % commonMultiple;
-                        }
-                    }
-
-                    int nextMonkeyId;
-                    if (worryDuringInspection % monkey.getDivisor() == 0) {
-                        nextMonkeyId = monkey.getTrueMonkey();
-                    } else {
-                        nextMonkeyId = monkey.getFalseMonkey();
-                    }
-
-                    monkeys.get(nextMonkeyId).addItem(worryDuringInspection);
-                }
-            }
-        }
-
-        return calculateMonkeyBusinessLevel(monkeys);
+        long[] numItemsInspected = new ItemTracer(monkeys).countInspections(PART_2_ROUNDS);
+        return calculateMonkeyBusinessLevel(numItemsInspected);
         // 27267163742
     }
-}
-
+}
\ No newline at end of file
@@ -1,215 +1,776 @@
-import java.awt.*;
 import java.io.File;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
-import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// Breadth-first search over a heightmap, working directly on the flat cell indices of the ByteGrid.
+// Every step costs 1, so a BFS finds shortest paths, and everything it needs is a flat array:
+// the elevation of every cell, the distance to every cell, and a queue of cell indices. Each cell is
+// enqueued at most once, so a queue with room for every cell never runs out of space, and nothing is
+// allocated per cell visited.
+class HeightmapBfs {
+    public static final int UNREACHABLE = -1;
+    private static final int NO_TARGET = -1;
+    private static final int NO_ELEVATION = -1;
+
+    private final ByteGrid grid;
+
+    // The elevation of every cell ('a' to 'z'), with the start ('S') and end ('E') replaced by 'a' and 'z'.
+    private final byte[] elevations;
+
+    private final int[] distances;
+    private final int[] queue;
+    private int nodesExpanded;
+
+    public HeightmapBfs(ByteGrid grid) {
+        this.grid = grid;
+        this.elevations = new byte[grid.size()];
+        for (int i = 0; i < grid.size(); i++) {
+            elevations[i] = elevationOf(grid.get(i));
+        }
+        this.distances = new int[grid.size()];
+        this.queue = new int[grid.size()];
+    }
 
-//
-record PQNode(Point point, int distance) {}
+    public static byte elevationOf(byte cell) {
+        if (cell == 'S') return 'a';
+        if (cell == 'E') return 'z';
+        return cell;
+    }
+
+    public ByteGrid getGrid() { return this.grid; }
+    public byte getElevation(int index) { return this.elevations[index]; }
+
+    // The number of cells whose neighbors were looked at during the last search.
+    public int getNodesExpanded() { return this.nodesExpanded; }
+
+    // Returns the fewest steps needed to get from the source cell to the target cell,
+    // or UNREACHABLE if there's no way to get there.
+    public int shortestPath(int source, int target) {
+        search(source, false, target, NO_ELEVATION);
+        return distances[target];
+    }
+
+    // Returns the fewest steps needed to get from the source cell to every cell (UNREACHABLE if there's no way).
+    // The returned array is reused by the next search, so copy it if it needs to be kept.
+    public int[] distancesFrom(int source) {
+        search(source, false, NO_TARGET, NO_ELEVATION);
+        return distances;
+    }
+
+    // Returns the fewest steps needed to get to the destination cell from any cell at the given elevation,
+    // or UNREACHABLE if there's no such cell that can get there. Rather than searching from every cell at that
+    // elevation, we search backwards from the destination (where a step down is allowed to be at most one lower,
+    // the reverse of the climbing rule), and stop at the first cell we reach at that elevation.
+    public int shortestPathFromElevation(int destination, byte elevation) {
+        int found = search(destination, true, NO_TARGET, elevation);
+        return found == NO_TARGET ? UNREACHABLE : distances[found];
+    }
+
+    // Returns the fewest steps needed to get from every cell to the destination cell (UNREACHABLE if there's
+    // no way), by searching backwards from the destination. The returned array is reused by the next search.
+    public int[] distancesTo(int destination) {
+        search(destination, true, NO_TARGET, NO_ELEVATION);
+        return distances;
+    }
+
+    // Runs a BFS from the source, stopping early once we reach the target cell or a cell at the target elevation
+    // (if either is given), and returning the cell we stopped at (or NO_TARGET if we didn't stop early).
+    // Searching forwards, a step can go up at most one. Searching in reverse, a step can go down at most one.
+    private int search(int source, boolean reverse, int target, int targetElevation) {
+        Arrays.fill(distances, UNREACHABLE);
+        int cols = grid.getCols();
+        int head = 0;
+        int tail = 0;
+        nodesExpanded = 0;
+
+        distances[source] = 0;
+        queue[tail++] = source;
+
+        while (head < tail) {
+            int current = queue[head++];
+            if (current == target || elevations[current] == targetElevation) return current;
+            nodesExpanded++;
+
+            int nextDistance = distances[current] + 1;
+            int minElevation = reverse ? elevations[current] - 1 : Byte.MIN_VALUE;
+            int maxElevation = reverse ? Byte.MAX_VALUE : elevations[current] + 1;
+            int col = current % cols;
+
+            // Up, down, left and right, skipping neighbors that are off the grid.
+            if (current >= cols) tail = visit(current - cols, nextDistance, minElevation, maxElevation, tail);
+            if (current + cols < distances.length) tail = visit(current + cols, nextDistance, minElevation, maxElevation, tail);
+            if (col > 0) tail = visit(current - 1, nextDistance, minElevation, maxElevation, tail);
+            if (col < cols - 1) tail = visit(current + 1, nextDistance, minElevation, maxElevation, tail);
+        }
+
+        return NO_TARGET;
+    }
 
-class NodeDistanceComparator implements Comparator<PQNode> {
-    @Override
-    public int compare(PQNode x, PQNode y) {
-        return Integer.compare(x.distance(), y.distance());
+    // Enqueues the neighbor if it hasn't been reached yet and its elevation is within the allowed range.
+    private int visit(int neighbor, int distance, int minElevation, int maxElevation, int tail) {
+        int elevation = elevations[neighbor];
+        if (distances[neighbor] == UNREACHABLE && elevation >= minElevation && elevation <= maxElevation) {
+            distances[neighbor] = distance;
+            queue[tail++] = neighbor;
+        }
+        return tail;
     }
 }
 
-public class Day12_Hill_Climbing_Algorithm {
-    public static void main(String[] args) {
-        File file = new File("./inputs/day12/day12.txt");
-        int width = 0;
-        int height = 0;
-        char[][] grid;
+// The result of a point-to-point search: the fewest steps (or HeightmapBfs.UNREACHABLE), along with how many
+// cells had their neighbors looked at, so that the different search modes can be compared.
+record PathSearchResult(int steps, int nodesExpanded) {}
 
-        try {
-            Scanner sc = new Scanner(file);
-            Scanner sc2 = new Scanner(file);
+// Point-to-point searches for when the start and end are close together on a huge heightmap, where a plain BFS
+// would explore far more of the map than it needs to.
+class PointToPointSearch {
+    private static final int[][] DIRECTIONS = {{0,-1}, {0,1}, {1,0}, {-1,0}}; // representation of four cardinal directions
 
-            // Determine the height and width of grid.
-            while (sc.hasNextLine()) {
-                String line = sc.nextLine();
-                width = line.length();
-                height++;
-            }
+    private final ByteGrid grid;
+    private final byte[] elevations;
+
+    public PointToPointSearch(ByteGrid grid) {
+        this.grid = grid;
+        this.elevations = new byte[grid.size()];
+        for (int i = 0; i < grid.size(); i++) {
+            elevations[i] = HeightmapBfs.elevationOf(grid.get(i));
+        }
+    }
+
+    // A plain BFS, for comparison.
+    public PathSearchResult bfs(int source, int target) {
+        HeightmapBfs bfs = new HeightmapBfs(grid);
+        int steps = bfs.shortestPath(source, target);
+        return new PathSearchResult(steps, bfs.getNodesExpanded());
+    }
 
-            // Initialize grid.
-            grid = new char[height][width];
+    /* A* search. Cells are expanded in order of (steps so far + a lower bound on the steps still needed),
+        where the lower bound is the larger of:
+        - the Manhattan distance to the target, since every step moves one cell, and
+        - how far the target is above the current cell, since every step climbs at most one.
+        Neither bound can drop by more than one in a single step, so the heuristic is consistent, and a cell's
+        distance is final the first time it's expanded. The open set is a binary heap of longs, each holding
+        (priority << 32 | cell), so nothing is allocated per cell.
+     */
+    public PathSearchResult aStar(int source, int target) {
+        int[] distances = new int[grid.size()];
+        Arrays.fill(distances, HeightmapBfs.UNREACHABLE);
+        boolean[] closed = new boolean[grid.size()];
+        LongMinHeap open = new LongMinHeap();
+        int nodesExpanded = 0;
+
+        distances[source] = 0;
+        open.add(((long) heuristic(source, target) << 32) | source);
+
+        while (!open.isEmpty()) {
+            int current = (int) open.poll();
+            if (closed[current]) continue;
+            if (current == target) break;
+
+            closed[current] = true;
+            nodesExpanded++;
+
+            int row = grid.row(current);
+            int col = grid.col(current);
+            for (int[] direction : DIRECTIONS) {
+                int newRow = row + direction[1];
+                int newCol = col + direction[0];
+                if (!grid.inBounds(newRow, newCol)) continue;
+
+                int neighbor = grid.index(newRow, newCol);
+                if (closed[neighbor] || elevations[neighbor] > elevations[current] + 1) continue;
+
+                int newDistance = distances[current] + 1;
+                if (distances[neighbor] == HeightmapBfs.UNREACHABLE || newDistance < distances[neighbor]) {
+                    distances[neighbor] = newDistance;
+                    open.add(((long) (newDistance + heuristic(neighbor, target)) << 32) | neighbor);
+                }
+            }
+        }
 
-            Point start = null;
-            Point end = null;
+        return new PathSearchResult(distances[target], nodesExpanded);
+    }
 
-            // Iterate through the input again and populate the grid.
-            int row = 0;
-            while (sc2.hasNextLine()) {
-                String line = sc2.nextLine();
-                for (int i = 0; i < line.length(); i++) {
-                    char currentChar = line.charAt(i);
-                    grid[row][i] = currentChar;
+    private int heuristic(int cell, int target) {
+        int manhattan = Math.abs(grid.row(cell) - grid.row(target)) + Math.abs(grid.col(cell) - grid.col(target));
+        int climb = elevations[target] - elevations[cell];
+        return Math.max(manhattan, climb);
+    }
 
-                    if (currentChar == 'S')
-                        start = new Point(i, row);
+    /* Bidirectional BFS. One search goes forwards from the source (climbing at most one per step), and the other
+        goes backwards from the target (descending at most one per step). We always expand a whole level of
+        whichever side has the smaller frontier, and whenever a cell gets reached by both sides, we have a path.
+        Once the forward side has reached every cell within f steps and the backward side every cell within b
+        steps, every path of length f + b or less has been found, so we can stop as soon as the best path
+        found is at most f + b + 1 long.
+     */
+    public PathSearchResult bidirectional(int source, int target) {
+        if (source == target) {
+            return new PathSearchResult(0, 0);
+        }
 
-                    if (currentChar == 'E')
-                        end = new Point(i, row);
+        int[] forwardDistances = new int[grid.size()];
+        int[] backwardDistances = new int[grid.size()];
+        Arrays.fill(forwardDistances, HeightmapBfs.UNREACHABLE);
+        Arrays.fill(backwardDistances, HeightmapBfs.UNREACHABLE);
+        int[] forwardQueue = new int[grid.size()];
+        int[] backwardQueue = new int[grid.size()];
+
+        forwardDistances[source] = 0;
+        backwardDistances[target] = 0;
+        forwardQueue[0] = source;
+        backwardQueue[0] = target;
+
+        // The frontier of each side is the part of its queue from its head to its tail.
+        int forwardHead = 0, forwardTail = 1, forwardDepth = 0;
+        int backwardHead = 0, backwardTail = 1, backwardDepth = 0;
+        int best = Integer.MAX_VALUE;
+        int nodesExpanded = 0;
+
+        while (forwardHead < forwardTail && backwardHead < backwardTail) {
+            if (best != Integer.MAX_VALUE && best <= forwardDepth + backwardDepth + 1) break;
+
+            boolean expandForward = forwardTail - forwardHead <= backwardTail - backwardHead;
+            int[] queue = expandForward ? forwardQueue : backwardQueue;
+            int[] distances = expandForward ? forwardDistances : backwardDistances;
+            int[] otherDistances = expandForward ? backwardDistances : forwardDistances;
+            int head = expandForward ? forwardHead : backwardHead;
+            int levelEnd = expandForward ? forwardTail : backwardTail;
+            int tail = levelEnd;
+
+            for (; head < levelEnd; head++) {
+                int current = queue[head];
+                nodesExpanded++;
+
+                int row = grid.row(current);
+                int col = grid.col(current);
+                for (int[] direction : DIRECTIONS) {
+                    int newRow = row + direction[1];
+                    int newCol = col + direction[0];
+                    if (!grid.inBounds(newRow, newCol)) continue;
+
+                    int neighbor = grid.index(newRow, newCol);
+                    if (distances[neighbor] != HeightmapBfs.UNREACHABLE) continue;
+
+                    // Forwards we can climb at most one. Backwards, we're undoing a step, so we can descend at most one.
+                    boolean allowed = expandForward
+                            ? elevations[neighbor] <= elevations[current] + 1
+                            : elevations[current] <= elevations[neighbor] + 1;
+                    if (!allowed) continue;
+
+                    distances[neighbor] = distances[current] + 1;
+                    queue[tail++] = neighbor;
+
+                    if (otherDistances[neighbor] != HeightmapBfs.UNREACHABLE) {
+                        best = Math.min(best, distances[neighbor] + otherDistances[neighbor]);
+                    }
                 }
-                row++;
             }
 
-            int part1 = part1(grid, start, end);
-            System.out.println("Part 1 is: " + part1);
+            if (expandForward) {
+                forwardHead = head;
+                forwardTail = tail;
+                forwardDepth++;
+            } else {
+                backwardHead = head;
+                backwardTail = tail;
+                backwardDepth++;
+            }
+        }
 
-            int part2 = part2(grid, end);
-            System.out.println("Part 2 is: " + part2);
+        return new PathSearchResult(best == Integer.MAX_VALUE ? HeightmapBfs.UNREACHABLE : best, nodesExpanded);
+    }
+}
 
-        } catch (IOException exception) {
-            exception.printStackTrace();
+// A min-heap of longs stored in a growable array.
+class LongMinHeap {
+    private long[] heap = new long[64];
+    private int size;
+
+    public boolean isEmpty() { return size == 0; }
+
+    public void add(long value) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
         }
+
+        // Sift the new value up until its parent is no bigger than it.
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (heap[parent] <= value) break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = value;
     }
 
-    // Helper method to initialize a HashMap that maps a point in the grid to its min path from the start point.
-    // The path from start point to itself is initialized to 0.
-    // All other points are initialized to the max int value.
-    private static Map<Point, Integer> generateDistancesMap(char[][] grid, Point start) {
-        Map<Point, Integer> distances = new HashMap<>();
+    public long poll() {
+        long min = heap[0];
+        long last = heap[--size];
+
+        // Sift the last value down from the root until both of its children are no smaller than it.
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && heap[child + 1] < heap[child]) child++;
+            if (last <= heap[child]) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return min;
+    }
+}
 
-        for (int i = 0; i < grid.length; i++) {
-            for (int j = 0; j < grid[i].length; j++) {
-                int initialDistance = grid[i][j] == grid[start.y][start.x] ? 0 : Integer.MAX_VALUE;
-                distances.put(new Point(j,i), initialDistance);
+// A level-synchronous BFS for gigantic heightmaps, where the frontier and the visited cells are bitsets
+// (one bit per cell, with each row padded out to a whole number of 64-bit words) and a whole level is expanded
+// 64 cells at a time with shifts and masks.
+//
+// Up front, we work out for each of the four directions which cells are allowed to step that way (the neighbor
+// is on the grid and is at most one higher, or at most one lower when searching in reverse). Then for each row,
+// the cells reached in the next level are:
+// - the frontier cells in this row that can step east, shifted one bit east (carrying across words),
+// - the frontier cells in this row that can step west, shifted one bit west,
+// - the frontier cells in the row above that can step south,
+// - the frontier cells in the row below that can step north,
+// minus the cells that have already been visited. Each row's next level only depends on the current level,
+// so the rows are split into bands that are expanded in parallel without any synchronization. Each level also
+// keeps track of which words in each row are occupied, so only the words around the frontier get looked at.
+//
+// Cells are addressed by int index, just like in the ByteGrid the masks are built from, so the heightmap can't
+// have more than Integer.MAX_VALUE (2^31 - 1) cells. That's roughly 46,000 x 46,000; a 50,000 x 50,000 grid
+// is already too big for ByteGrid to hold or load.
+class BitParallelBfs {
+    private static final int NORTH = 0, SOUTH = 1, EAST = 2, WEST = 3;
+
+    private final ForkJoinPool pool;
+    private final int rows;
+    private final int cols;
+    private final int wordsPerRow;
+    private final long[][] canStep; // indexed by direction, then by word
+    private final int bandSize;
+
+    public BitParallelBfs(ByteGrid grid, boolean reverse, ForkJoinPool pool) {
+        this.pool = pool;
+        this.rows = grid.getRows();
+        this.cols = grid.getCols();
+        this.wordsPerRow = (cols + Long.SIZE - 1) / Long.SIZE;
+        this.canStep = new long[4][rows * wordsPerRow];
+        this.bandSize = Math.max(1, rows / (pool.getParallelism() * 4));
+
+        PoolRunner.run(pool, () -> IntStream.range(0, rows).parallel().forEach(r -> {
+            for (int c = 0; c < cols; c++) {
+                int elevation = HeightmapBfs.elevationOf(grid.get(r, c));
+                int word = r * wordsPerRow + c / Long.SIZE;
+                long bit = 1L << (c % Long.SIZE);
+
+                if (r > 0 && canClimb(elevation, HeightmapBfs.elevationOf(grid.get(r - 1, c)), reverse)) canStep[NORTH][word] |= bit;
+                if (r < rows - 1 && canClimb(elevation, HeightmapBfs.elevationOf(grid.get(r + 1, c)), reverse)) canStep[SOUTH][word] |= bit;
+                if (c < cols - 1 && canClimb(elevation, HeightmapBfs.elevationOf(grid.get(r, c + 1)), reverse)) canStep[EAST][word] |= bit;
+                if (c > 0 && canClimb(elevation, HeightmapBfs.elevationOf(grid.get(r, c - 1)), reverse)) canStep[WEST][word] |= bit;
             }
+        }));
+    }
+
+    private static boolean canClimb(int from, int to, boolean reverse) {
+        return reverse ? from <= to + 1 : to <= from + 1;
+    }
+
+    // Returns the fewest steps needed to get from the source cell to the target cell, or HeightmapBfs.UNREACHABLE.
+    public int shortestPath(int source, int target) {
+        return shortestPathFromAny(new int[] { source }, target);
+    }
+
+    // Returns the fewest steps needed to get from any of the source cells to the target cell,
+    // or HeightmapBfs.UNREACHABLE.
+    public int shortestPathFromAny(int[] sources, int target) {
+        long[] visited = new long[rows * wordsPerRow];
+        Level frontier = new Level(rows, wordsPerRow);
+        Level next = new Level(rows, wordsPerRow);
+
+        for (int source : sources) {
+            int word = wordOf(source);
+            visited[word] |= bitOf(source);
+            frontier.add(source / cols, word, bitOf(source), wordsPerRow);
         }
 
-        return distances;
+        int targetWord = wordOf(target);
+        long targetBit = bitOf(target);
+        int bands = (rows + bandSize - 1) / bandSize;
+
+        for (int distance = 0; ; distance++) {
+            if ((frontier.words[targetWord] & targetBit) != 0) {
+                return distance;
+            }
+
+            Level currentFrontier = frontier;
+            Level nextFrontier = next;
+            boolean anyReached = PoolRunner.run(pool, () -> IntStream.range(0, bands).parallel()
+                    .mapToObj(band -> expandBand(band, currentFrontier, nextFrontier, visited))
+                    .reduce(false, Boolean::logicalOr));
+
+            if (!anyReached) {
+                return HeightmapBfs.UNREACHABLE;
+            }
+
+            // The next level becomes the frontier, and the old frontier is reused for the level after.
+            next = frontier;
+            frontier = nextFrontier;
+        }
     }
 
-    // Returns a list of valid neighboring points from the given point.
-    // Ensures that the point is within the bounds off the grid.
-    // A point is considered a valid neighbor if its ASCII char value is at most one higher
-    // than the given point.
-    private static List<Point> getNeighbors(char[][] grid, Point p) {
-        List<Point> validNeighbors = new ArrayList<>();
-        int[][] directions = {{0,-1}, {0,1}, {1,0}, {-1,0}}; // representation of four cardinal directions
-
-        for (int[] direction : directions) {
-            char current = grid[p.y][p.x];
-            int newRow = p.y + direction[1];
-            int newCol = p.x + direction[0];
-
-            // Boundary checking
-            if (newRow >= 0 && newRow < grid.length && newCol >= 0 && newCol < grid[0].length) {
-                char next = grid[newRow][newCol];
-
-                // If we're looking for the neighbors of the start point, we treat it as if it were an 'a'.
-                // Similarly, if we're looking at the end point as the next point (destination point), we treat it
-                // as if it were a 'z'.
-                if (current == 'S')
-                    current = 'a';
-                else if (next == 'E') {
-                    next = 'z';
-                }
+    // Works out the next level for every row in the band, marking those cells as visited.
+    // Returns true if any new cells were reached.
+    private boolean expandBand(int band, Level frontier, Level next, long[] visited) {
+        boolean anyReached = false;
+        int lastRow = Math.min(rows, (band + 1) * bandSize);
+
+        for (int r = band * bandSize; r < lastRow; r++) {
+            int rowStart = r * wordsPerRow;
+
+            // Clear out whatever this row held two levels ago.
+            if (next.lo[r] <= next.hi[r]) {
+                Arrays.fill(next.words, rowStart + next.lo[r], rowStart + next.hi[r] + 1, 0);
+            }
 
-                // Compare the ASCII value of the char and ensure that the difference between them is at most 1.
-                if ((int)next - (int)current <= 1) {
-                    validNeighbors.add(new Point(newCol, newRow));
+            // Only the words next to the frontier in this row and the rows above and below can be reached.
+            int lo = frontier.lo[r], hi = frontier.hi[r];
+            if (r > 0) { lo = Math.min(lo, frontier.lo[r - 1]); hi = Math.max(hi, frontier.hi[r - 1]); }
+            if (r < rows - 1) { lo = Math.min(lo, frontier.lo[r + 1]); hi = Math.max(hi, frontier.hi[r + 1]); }
+            lo = Math.max(0, lo - 1);
+            hi = Math.min(wordsPerRow - 1, hi + 1);
+
+            int reachedLo = wordsPerRow, reachedHi = -1;
+            for (int w = lo; w <= hi; w++) {
+                int i = rowStart + w;
+                long[] f = frontier.words;
+
+                // Cells stepping east move up one bit, carrying the top bit of the previous word.
+                long east = f[i] & canStep[EAST][i];
+                long eastCarry = w > 0 ? (f[i - 1] & canStep[EAST][i - 1]) >>> (Long.SIZE - 1) : 0;
+
+                // Cells stepping west move down one bit, carrying the bottom bit of the next word.
+                long west = f[i] & canStep[WEST][i];
+                long westCarry = w < wordsPerRow - 1 ? (f[i + 1] & canStep[WEST][i + 1]) << (Long.SIZE - 1) : 0;
+
+                long fromNorth = r > 0 ? f[i - wordsPerRow] & canStep[SOUTH][i - wordsPerRow] : 0;
+                long fromSouth = r < rows - 1 ? f[i + wordsPerRow] & canStep[NORTH][i + wordsPerRow] : 0;
+
+                long reached = ((east << 1) | eastCarry | (west >>> 1) | westCarry | fromNorth | fromSouth) & ~visited[i];
+                if (reached != 0) {
+                    next.words[i] = reached;
+                    visited[i] |= reached;
+                    reachedLo = Math.min(reachedLo, w);
+                    reachedHi = w;
                 }
             }
+
+            next.lo[r] = reachedLo;
+            next.hi[r] = reachedHi;
+            anyReached |= reachedHi >= 0;
         }
 
-        return validNeighbors;
+        return anyReached;
     }
 
-    /* Part 1: Find the shortest path from the start point to the end point by implementing Dijkstra's algorithm.
-        We need:
-        - a set to hold visited points
-        - a priority queue (PQ) of (point, distance) pairs which tells us which node to visit next based on
-        its minimum distance so far.
-        - a map from points to their distances to store the distances so far between the source node and all other nodes.
+    // One level of the search: a bitset of cells, plus the range of words in each row that might be non-zero
+    // so that a level only costs as much as the words it actually occupies rather than the whole grid.
+    private static class Level {
+        final long[] words;
+        final int[] lo;
+        final int[] hi;
+
+        Level(int rows, int wordsPerRow) {
+            this.words = new long[rows * wordsPerRow];
+            this.lo = new int[rows];
+            this.hi = new int[rows];
+            Arrays.fill(lo, wordsPerRow);
+            Arrays.fill(hi, -1);
+        }
 
-        While the PQ is not empty:
-        1. get the next smallest distance node from the PQ that hasn't been visited yet.
-        2. add that node to the visited set
-        3. get the neighbors of the node and for each neighbor:
-            3.1 if dist[current] + 1 < dist[neighbor], update dist[neighbor] to the new minimum value.
-            3.2 add the neighbor to the PQ.
+        void add(int row, int word, long bit, int wordsPerRow) {
+            words[word] |= bit;
+            lo[row] = Math.min(lo[row], word - row * wordsPerRow);
+            hi[row] = Math.max(hi[row], word - row * wordsPerRow);
+        }
+    }
 
-        Post-mortem: After implementing this in Dijkstra's algorithm, we realized that because all edge
-        weights are 1, a simple BFS using a normal queue instead of a priority queue will suffice. This is because
-        BFS is a special case of Dijkstra's algorithm on unweighted graphs.
-     */
-    private static int part1(char[][] grid, Point start, Point end) {
-        Map<Point, Integer> distances = generateDistancesMap(grid, start);
-        Set<Point> visited = new HashSet<>();
-
-        // A min-heap is used to efficiently retrieve the vertex with the least path distance.
-        PriorityQueue<PQNode> queue = new PriorityQueue<>(new NodeDistanceComparator());
-        queue.add(new PQNode(start, 0));
-
-        while (!queue.isEmpty()) {
-            PQNode node = queue.poll();
-            Point currentPoint = node.point();
-
-            // If we've already visited this node, move on.
-            if (visited.contains(currentPoint)) continue;
-
-            // Add the point to our visited set indicating that this point has been visited.
-            visited.add(currentPoint);
-
-            // Get the valid neighbors (in which the destination cell is at most one higher than the source cell)
-            List<Point> neighbors = getNeighbors(grid, currentPoint);
-
-            // For each neighbor, if the distance of the source node to the current node (dist[current]) plus
-            // the weight of the edge from the current node to the neighbor (weight[current, neighbor]) (in our case, it is 1)
-            // is less than the best recorded distance of the source node to the neighbor (dist[neighbor]) already,
-            // we update the distance to the neighbor to the new minimum distance value.
-            // Otherwise, no updates are made.
-            // In other words, we update if: dist[current] + 1 < dist[neighbor]
-            for (Point neighbor : neighbors) {
-                if (!visited.contains(neighbor)) {
-                    int newDistance = distances.get(currentPoint) + 1;
-                    if (newDistance < distances.get(neighbor)) {
-                        distances.put(neighbor, newDistance);
-                        queue.add(new PQNode(neighbor, newDistance));
-                    }
-                }
+    private int wordOf(int cell) { return (cell / cols) * wordsPerRow + (cell % cols) / Long.SIZE; }
+    private long bitOf(int cell) { return 1L << ((cell % cols) % Long.SIZE); }
+}
+
+// The fewest steps needed to get from every cell of a heightmap to its summit ('E'), computed once with a
+// reverse BFS from the summit, so that the number of steps from any start point is just an array lookup.
+// A copy of the heightmap is kept alongside the distances, so we can tell which heightmap they belong to.
+// Distance fields can also be saved to and loaded from a compact binary file (the number of rows and columns,
+// followed by one byte per cell of the heightmap and then one int per cell for the distances).
+class DistanceField {
+    private static final int CHUNK_SIZE = 1 << 20; // the most bytes save and load buffer at a time
+
+    private final int rows;
+    private final int cols;
+    private final byte[] cells;
+    private final int[] distances;
+
+    private DistanceField(int rows, int cols, byte[] cells, int[] distances) {
+        this.rows = rows;
+        this.cols = cols;
+        this.cells = cells;
+        this.distances = distances;
+    }
+
+    public static DistanceField compute(ByteGrid grid) {
+        int summit = grid.indexOf((byte) 'E');
+        if (summit < 0) {
+            throw new IllegalArgumentException("Heightmap has no summit ('E')");
+        }
+
+        byte[] cells = new byte[grid.size()];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = grid.get(i);
+        }
+
+        int[] distances = new HeightmapBfs(grid).distancesTo(summit).clone();
+        return new DistanceField(grid.getRows(), grid.getCols(), cells, distances);
+    }
+
+    // Returns true if these distances were computed for a heightmap with exactly the same cells as the given one.
+    public boolean matches(ByteGrid grid) {
+        if (grid.getRows() != rows || grid.getCols() != cols) {
+            return false;
+        }
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != grid.get(i)) return false;
+        }
+        return true;
+    }
+
+    // Returns the fewest steps needed to get from (x, y) to the summit, or HeightmapBfs.UNREACHABLE.
+    public int stepsFrom(int x, int y) {
+        if (x < 0 || x >= cols || y < 0 || y >= rows) {
+            throw new IndexOutOfBoundsException("(" + x + ", " + y + ") is outside the heightmap");
+        }
+        return distances[y * cols + x];
+    }
+
+    // The file can be several times larger than the heightmap (five bytes per cell), so it's written and read
+    // through a buffer of at most CHUNK_SIZE bytes rather than all at once.
+    public void save(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+            buffer.putInt(rows).putInt(cols).flip();
+            writeFully(channel, buffer);
+
+            for (int offset = 0; offset < cells.length; offset += CHUNK_SIZE) {
+                writeFully(channel, ByteBuffer.wrap(cells, offset, Math.min(CHUNK_SIZE, cells.length - offset)));
+            }
+
+            int intsPerChunk = CHUNK_SIZE / Integer.BYTES;
+            for (int offset = 0; offset < distances.length; offset += intsPerChunk) {
+                int count = Math.min(intsPerChunk, distances.length - offset);
+                buffer.clear();
+                buffer.asIntBuffer().put(distances, offset, count);
+                buffer.limit(count * Integer.BYTES);
+                writeFully(channel, buffer);
+            }
+        }
+    }
+
+    public static DistanceField load(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < 2 * Integer.BYTES) {
+                throw new IOException("Distance field file is truncated: " + file);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+            buffer.limit(2 * Integer.BYTES);
+            readFully(channel, buffer, file);
+            int rows = buffer.getInt(0);
+            int cols = buffer.getInt(Integer.BYTES);
+            long size = (long) rows * cols;
+            if (rows < 0 || cols < 0 || size > Integer.MAX_VALUE) {
+                throw new IOException("Distance field file has an invalid size (" + rows + " x " + cols + "): " + file);
+            }
+            if (fileSize != 2 * Integer.BYTES + size * (1 + Integer.BYTES)) {
+                throw new IOException("Distance field file is truncated: " + file);
+            }
+
+            byte[] cells = new byte[(int) size];
+            for (int offset = 0; offset < cells.length; offset += CHUNK_SIZE) {
+                readFully(channel, ByteBuffer.wrap(cells, offset, Math.min(CHUNK_SIZE, cells.length - offset)), file);
+            }
+
+            int[] distances = new int[cells.length];
+            int intsPerChunk = CHUNK_SIZE / Integer.BYTES;
+            for (int offset = 0; offset < distances.length; offset += intsPerChunk) {
+                int count = Math.min(intsPerChunk, distances.length - offset);
+                buffer.clear().limit(count * Integer.BYTES);
+                readFully(channel, buffer, file);
+                buffer.flip();
+                buffer.asIntBuffer().get(distances, offset, count);
+            }
+            return new DistanceField(rows, cols, cells, distances);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, File file) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Distance field file is truncated: " + file);
             }
         }
+    }
+}
+
+// Keeps the distance fields of the most recently used heightmaps, keyed by the content of the heightmap, so that
+// repeated queries against the same heightmap only pay for the BFS once. When there are more heightmaps than
+// the cache has room for, the least recently used one is evicted. If a directory is given, distance fields are
+// also saved there and loaded back on a cache miss, so they survive between runs.
+//
+// A heightmap's key starts from a 64-bit hash of its cells, which takes a pass over the whole heightmap. Since
+// different heightmaps can share a hash, a cached or saved distance field is only used once its copy of the
+// heightmap has been checked against the grid; if it doesn't match, we try the next key along ("<hash>-1",
+// "<hash>-2", ...). Both of those are O(cells), so once a ByteGrid has been matched to its distance field, the
+// field is remembered for that grid (for as long as both are around) and later lookups skip straight to it.
+// Grids shouldn't be changed after they've been looked up.
+class DistanceFieldCache {
+    private final Map<String, DistanceField> fields;
+    private final Map<ByteGrid, Resolved> resolved = new WeakHashMap<>();
+    private final File directory;
+
+    public DistanceFieldCache(int capacity) {
+        this(capacity, null);
+    }
+
+    public DistanceFieldCache(int capacity, File directory) {
+        this.directory = directory;
 
-        // Find the shortest path to get to the end point.
-        return distances.get(end);
+        // An access-ordered LinkedHashMap keeps the least recently used entry first, so it's the one we evict.
+        this.fields = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, DistanceField> eldest) {
+                return size() > capacity;
+            }
+        };
     }
 
-    // Helper method that when given a grid, returns a list of all of its starting points (i.e. points whose
-    // char is 'a' or 'S')
-    private static List<Point> findStartingPoints(char[][] grid) {
-        List<Point> startingPoints = new ArrayList<>();
-        for (int i = 0; i < grid.length; i++) {
-            for (int j = 0; j < grid[i].length; j++) {
-                if (grid[i][j] == 'a' || grid[i][j] == 'S') {
-                    startingPoints.add(new Point(j, i));
+    public synchronized DistanceField get(ByteGrid grid) throws IOException {
+        // We've already matched this grid to its distance field. Touch its key so it stays recently used.
+        Resolved previous = resolved.get(grid);
+        DistanceField previousField = previous == null ? null : previous.field().get();
+        if (previousField != null) {
+            fields.get(previous.key());
+            return previousField;
+        }
+
+        String hashKey = hashKeyOf(grid);
+        for (int attempt = 0; ; attempt++) {
+            String key = attempt == 0 ? hashKey : hashKey + "-" + attempt;
+            DistanceField field = fields.get(key);
+            File file = directory == null ? null : new File(directory, key + ".dist");
+
+            if (field == null && file != null && file.exists()) {
+                field = DistanceField.load(file);
+            }
+
+            if (field == null) {
+                // Nothing is using this key yet, so it's ours.
+                field = DistanceField.compute(grid);
+                if (file != null) {
+                    field.save(file);
                 }
+            } else if (!field.matches(grid)) {
+                continue; // A different heightmap with the same hash got this key first.
             }
+
+            fields.put(key, field);
+            resolved.put(grid, new Resolved(key, new WeakReference<>(field)));
+            return field;
+        }
+    }
+
+    // Returns the fewest steps needed to get from (x, y) to the summit of the given heightmap.
+    public int stepsFrom(ByteGrid grid, int x, int y) throws IOException {
+        return get(grid).stepsFrom(x, y);
+    }
+
+    private record Resolved(String key, WeakReference<DistanceField> field) {}
+
+    // Heightmaps are identified by their dimensions and a 64-bit FNV-1a hash of their cells.
+    private static String hashKeyOf(ByteGrid grid) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < grid.size(); i++) {
+            hash ^= grid.get(i) & 0xFF;
+            hash *= 0x100000001B3L;
         }
-        return startingPoints;
+        return grid.getRows() + "x" + grid.getCols() + "-" + Long.toHexString(hash);
     }
+}
+
+public class Day12_Hill_Climbing_Algorithm {
+    public static void main(String[] args) {
+        File file = new File("./inputs/day12/day12.txt");
 
-    // Part 2: We repeatedly run Dijkstra's algorithm on each starting point and return the minimum of the
-    // results. Because part 1 of this problem is already an implementation of Dijkstra's algorithm given a start
-    // and end point, we just call the part1 method instead.
-    private static int part2(char[][] grid, Point end) {
-        List<Point> startingPoints = findStartingPoints(grid);
+        try {
+            // Read the whole heightmap in one pass.
+            ByteGrid grid = ByteGrid.load(file);
+
+            int start = grid.indexOf((byte) 'S');
+            int end = grid.indexOf((byte) 'E');
+            HeightmapBfs bfs = new HeightmapBfs(grid);
 
-        int minSteps = Integer.MAX_VALUE;
+            int part1 = part1(bfs, start, end);
+            System.out.println("Part 1 is: " + part1);
+
+            int part2 = part2(bfs, end);
+            System.out.println("Part 2 is: " + part2);
 
-        for (Point start : startingPoints) {
-            int steps = part1(grid, start, end);
-            minSteps = Math.min(steps, minSteps);
+        } catch (IOException exception) {
+            exception.printStackTrace();
         }
+    }
+
+    /* Part 1: Find the shortest path from the start point to the end point.
+
+        We originally implemented Dijkstra's algorithm here, with a priority queue of (point, distance) pairs,
+        a map from points to their distances so far, and a set of visited points.
 
-        return minSteps;
+        Post-mortem: After implementing this in Dijkstra's algorithm, we realized that because all edge
+        weights are 1, a simple BFS using a normal queue instead of a priority queue will suffice. This is because
+        BFS is a special case of Dijkstra's algorithm on unweighted graphs. So we now use a BFS (see HeightmapBfs),
+        which also works on flat arrays instead of maps and sets of points.
+     */
+    private static int part1(HeightmapBfs bfs, int start, int end) {
+        int steps = bfs.shortestPath(start, end);
+        return steps == HeightmapBfs.UNREACHABLE ? Integer.MAX_VALUE : steps;
     }
 
+    // Part 2: Find the fewest steps needed to get to the end point from any cell with elevation 'a'.
+    // We originally ran part 1 from every starting point and took the minimum.
+    //
     // Part 2 Post-Mortem: Upon finishing this problem, we discovered that we don't necessarily need to repeatedly
     // call Dijkstra's algorithm for each starting point. Instead, in order to find the fewest steps required to
     // move starting from any starting point to the end point, we can reverse the order of the start and end points
     // and treat our end point as our source and find the minimum distance to any starting point (as our distance).
-}
+    // That's what we do now: a single BFS backwards from the end point, which stops at the first 'a' it reaches.
+    private static int part2(HeightmapBfs bfs, int end) {
+        int steps = bfs.shortestPathFromElevation(end, (byte) 'a');
+        return steps == HeightmapBfs.UNREACHABLE ? Integer.MAX_VALUE : steps;
+    }
+}
\ No newline at end of file
@@ -1,225 +1,541 @@
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.stream.IntStream;
+
+// A packet stored as a flat stream of tokens rather than as nested lists. Each token is either OPEN ('['),
+// CLOSE (']') or a non-negative integer value, and commas are dropped since they carry no information.
+// For example, [1,[2,3]] becomes { OPEN, 1, OPEN, 2, 3, CLOSE, CLOSE }.
+//
+// This lets us parse a packet in a single pass into one array, and compare two packets by walking
+// both arrays at the same time without any boxing, recursion or temporary lists.
+final class Packet implements Comparable<Packet> {
+    public static final int OPEN = -1;
+    public static final int CLOSE = -2;
+
+    private final int[] tokens;
+
+    private Packet(int[] tokens) {
+        this.tokens = tokens;
+    }
+
+    // Parses a packet such as "[1,[2,3]]".
+    public static Packet parse(CharSequence line) {
+        byte[] bytes = line.toString().getBytes(StandardCharsets.ISO_8859_1);
+        return parse(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    // Parses the packet held in bytes [start, end) of the buffer. Every token takes up at least one byte,
+    // so the packet never needs more tokens than the slice has bytes.
+    //
+    // Besides balancing the brackets, each byte has to be allowed by the one before it: a list or number can only
+    // start at the very beginning or after '[' or ',', a ',' or ']' can only follow a finished element (a ']' may
+    // also close an empty list), and nothing may follow the ']' that closes the outermost list. This rejects
+    // input such as "[1][2]", "[1]2", "[1,,2]" and "[,]" that would otherwise produce a token stream the
+    // comparisons can't walk.
+    public static Packet parse(ByteBuffer buffer, int start, int end) {
+        int[] tokens = new int[end - start];
+        int count = 0;
+        int depth = 0;
+        byte previous = 0; // the last '[', ']' or ',' seen, or '0' after a number; 0 before the first byte
+
+        for (int i = start; i < end; i++) {
+            byte c = buffer.get(i);
+            boolean elementStart = previous == 0 || previous == '[' || previous == ',';
+            boolean elementEnd = previous == ']' || previous == '0';
+            boolean allowed;
+            if (previous != 0 && depth == 0) {
+                allowed = false; // the outermost list has already been closed
+            } else if (c == '[') {
+                allowed = elementStart;
+            } else if (c == ']') {
+                allowed = elementEnd || previous == '[';
+            } else if (c == ',') {
+                allowed = elementEnd;
+            } else if (c >= '0' && c <= '9') {
+                allowed = elementStart && previous != 0;
+            } else {
+                throw new IllegalArgumentException("Unexpected character '" + (char) c + "' in packet: "
+                        + PacketLog.describe(buffer, start, end));
+            }
+            if (!allowed) {
+                throw new IllegalArgumentException("Unexpected '" + (char) c + "' at position " + (i - start)
+                        + " of packet: " + PacketLog.describe(buffer, start, end));
+            }
+
+            if (c == '[') {
+                tokens[count++] = OPEN;
+                depth++;
+                previous = '[';
+            } else if (c == ']') {
+                depth--;
+                tokens[count++] = CLOSE;
+                previous = ']';
+            } else if (c == ',') {
+                previous = ',';
+            } else {
+                // Accumulate every digit of a multi-digit number.
+                int value = 0;
+                while (i < end && buffer.get(i) >= '0' && buffer.get(i) <= '9') {
+                    value = Math.addExact(Math.multiplyExact(value, 10), buffer.get(i) - '0');
+                    i++;
+                }
+                i--;
+                tokens[count++] = value;
+                previous = '0';
+            }
+        }
+
+        if (depth != 0 || count == 0) {
+            throw new IllegalArgumentException("Malformed packet: " + PacketLog.describe(buffer, start, end));
+        }
+
+        return new Packet(Arrays.copyOf(tokens, count));
+    }
+
+    // Creates the divider packet [[value]].
+    public static Packet divider(int value) {
+        return new Packet(new int[] { OPEN, OPEN, value, CLOSE, CLOSE });
+    }
+
+    public int[] getTokens() { return this.tokens; }
+
+    // Walks the two token streams side by side. Returns a negative number if this packet comes before the other
+    // (i.e. the pair is in the right order), a positive number if it comes after, and 0 if they're equal.
+    //
+    // When an integer meets a list, the integer is treated as a list containing just that integer.
+    // Rather than building that list, we step into the other side's list and count a "virtual" list wrapped
+    // around the integer, which stays put until it has been compared. Once it has, that side reads a virtual
+    // CLOSE for each of those lists before carrying on with its real tokens.
+    @Override
+    public int compareTo(Packet other) {
+        int[] left = this.tokens;
+        int[] right = other.tokens;
+        int i = 0, j = 0;
+        int leftWraps = 0, rightWraps = 0;
+        int leftPendingCloses = 0, rightPendingCloses = 0;
+
+        // Both sides are always at the same (real plus virtual) depth, so they reach their final CLOSE together.
+        while (i < left.length) {
+            int l = leftPendingCloses > 0 ? CLOSE : left[i];
+            int r = rightPendingCloses > 0 ? CLOSE : right[j];
+
+            if (l == CLOSE || r == CLOSE) {
+                // If exactly one side's list runs out first, that side comes first.
+                if (l != CLOSE) return 1;
+                if (r != CLOSE) return -1;
+
+                if (leftPendingCloses > 0) leftPendingCloses--; else i++;
+                if (rightPendingCloses > 0) rightPendingCloses--; else j++;
+            } else if (l == OPEN && r == OPEN) {
+                i++;
+                j++;
+            } else if (l == OPEN) {
+                // Wrap the right integer in a list and compare it against the left list's contents.
+                rightWraps++;
+                i++;
+            } else if (r == OPEN) {
+                leftWraps++;
+                j++;
+            } else if (l != r) {
+                return Integer.compare(l, r);
+            } else {
+                i++;
+                j++;
+                leftPendingCloses = leftWraps;
+                rightPendingCloses = rightWraps;
+                leftWraps = rightWraps = 0;
+            }
+        }
 
-record PacketPair(List<Object> packetLeft, List<Object> packetRight) {}
+        return 0;
+    }
 
-// Because we wrote a comparator in part 1 of the problem, we call it here
-// when attempting to sort a list of packets.
-class PacketComparator implements Comparator<List<Object>> {
     @Override
-    public int compare(List<Object> packet1, List<Object> packet2) {
-        return Day13_Distress_Signal.comparePackets(packet1, packet2);
+    public boolean equals(Object obj) {
+        return obj instanceof Packet packet && Arrays.equals(tokens, packet.tokens);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(tokens);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < tokens.length; k++) {
+            if (k > 0 && tokens[k] != CLOSE && tokens[k - 1] != OPEN) {
+                sb.append(',');
+            }
+            sb.append(tokens[k] == OPEN ? "[" : tokens[k] == CLOSE ? "]" : String.valueOf(tokens[k]));
+        }
+        return sb.toString();
     }
 }
 
-public class Day13_Distress_Signal {
-    public static void main(String[] args) {
-        File file = new File("./inputs/day13/day13.txt");
-        List<PacketPair> pairs = new ArrayList<>();
+// The packets of an input file, left in place in a memory-mapped copy of the file. Loading the log only finds
+// where each packet's line starts and ends, so packets can be compared straight from the raw bytes without
+// building anything per packet. Packets 2k and 2k + 1 make up the k-th pair (counting from 0).
+class PacketLog {
+    private final MappedByteBuffer buffer;
+    private final int[] starts;
+    private final int[] ends;
+    private final int size;
+
+    private PacketLog(MappedByteBuffer buffer, int[] starts, int[] ends, int size) {
+        this.buffer = buffer;
+        this.starts = starts;
+        this.ends = ends;
+        this.size = size;
+    }
 
-        try {
-            Scanner sc = new Scanner(file);
+    // Maps the file and records the bounds of every non-blank line, ignoring any '\r' before a '\n'.
+    public static PacketLog map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Packet log is too large to map: " + file);
+            }
 
-            List<Object> leftPacket = null;
-            while (sc.hasNextLine()) {
-                String line = sc.nextLine();
-                Stack<Object> stack = new Stack<>();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            int length = (int) fileSize;
 
-                if (line.equals("")) {
+            int[] starts = new int[16];
+            int[] ends = new int[16];
+            int size = 0;
+
+            int lineStart = 0;
+            for (int i = 0; i <= length; i++) {
+                if (i < length && buffer.get(i) != '\n') {
                     continue;
                 }
 
-                StringBuilder sb = new StringBuilder();
-
-                // Iterate through the packet string and add each character (except for the commas)
-                // to our stack. If we come across a closing bracket (']'), we pop off all
-                // the characters until we hit an opening bracket ('[') and add it to a list.
-                // We put this list back on the stack and repeat until a single parent list emerges.
-                for (int i = 0; i < line.length(); i++) {
-                    char c = line.charAt(i);
-                    if (c == ',') {
-                        // We may have generated a string representing a multi-digit number so add it onto our stack.
-                        if (sb.length() > 0) {
-                            stack.push(sb.toString());
-                            sb.setLength(0);
-                        }
-                        continue;
-                    }
+                int lineEnd = i;
+                if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
 
-                    if (c == ']') {
-                        // If we have anything left in our string builder, put it onto the stack now.
-                        if (sb.length() > 0) {
-                            stack.push(sb.toString());
-                            sb.setLength(0);
-                        }
-                        List<Object> sublist = new ArrayList<>();
-
-                        // Repeatedly pop off items in the stack until we hit an opening bracket.
-                        while (!stack.peek().equals('[')) {
-                            Object top = stack.pop();
-                            sublist.add(top);
-                        }
-
-                        stack.pop(); // Pop off the opening bracket
-                        Collections.reverse(sublist); // Because elements were added in reverse order, we reverse it here.
-                        stack.push(sublist); // Add our sublist onto our stack as it may be part of a parent list.
-                    } else if (c == '['){
-                        stack.push(c);
-                    } else {
-                        // For characters that are integers, we could have numbers with more
-                        // than one digit so we accumulate it here into a StringBuilder.
-                        sb.append(c);
+                if (lineEnd > lineStart) {
+                    if (size == starts.length) {
+                        starts = Arrays.copyOf(starts, size * 2);
+                        ends = Arrays.copyOf(ends, size * 2);
                     }
+                    starts[size] = lineStart;
+                    ends[size] = lineEnd;
+                    size++;
                 }
 
-                // Finally, our packet is the last remaining list in the stack.
-                List<Object> packet = (List<Object>)stack.pop();
-
-                // If we've already processed a left packet, then construct our PacketPair class with
-                // the newly-processed packet being the right packet. Otherwise, the newly-procesesed packet
-                // is the left packet so set it and move to parse the next line.
-                if (leftPacket != null) {
-                    pairs.add(new PacketPair(leftPacket, packet));
-                    leftPacket = null;
-                } else {
-                    leftPacket = packet;
-                }
+                lineStart = i + 1;
             }
 
-            int part1 = part1(pairs);
-            System.out.println("Part 1 is: " + part1);
+            return new PacketLog(buffer, starts, ends, size);
+        }
+    }
 
-            int part2 = part2(pairs);
-            System.out.println("Part 2 is: " + part2);
+    public int size() { return this.size; }
+    public int pairCount() { return this.size / 2; }
 
-        } catch (IOException exception) {
-            exception.printStackTrace();
-        }
+    public Packet packet(int index) {
+        return Packet.parse(buffer, starts[index], ends[index]);
     }
 
-    // Helper method to try to parse the given Object into an integer.
-    // If successful, returns the integer. Otherwise, return null.
-    public static Integer parseIntOrNull(Object value) {
-        try {
-            return Integer.parseInt(value.toString());
-        } catch (NumberFormatException e) {
-            return null;
+    // Parses every packet in the log, for when they need to be compared over and over again.
+    public List<Packet> packets() {
+        List<Packet> packets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            packets.add(packet(i));
         }
+        return packets;
     }
 
-    // Recursive function that compares the two given packets. Returns -1 if the left packet is "less than"
-    // the right packet (meaning that the left and right packets are given in the correct order).
-    // Returns 0 if the left packet is "equal to" the right packet. Returns 1 if the left packet
-    // is "greater than" the right packet (meaning that the left and right packets are in the wrong order).
-    public static Integer comparePackets(List<Object> left, List<Object> right) {
-        int index = 0;
-
-        while (index < left.size() && index < right.size()) {
-            Object leftValue = left.get(index);
-            Object rightValue = right.get(index);
-
-            Integer leftInt = parseIntOrNull(leftValue);
-            Integer rightInt = parseIntOrNull(rightValue);
-
-            // If both values are integers, the lower integer should come first.
-            // If the left integer is lower than the right integer,
-            // the inputs are in the right order. If the left integer is higher
-            // than the right integer, the inputs are not in the right order.
-            // Otherwise, the inputs are the same integer.
-            // Continue checking the next part of the input.
-            if (leftInt != null && rightInt != null) {
-                if (leftInt < rightInt) {
-                    return -1;
-                } else if (leftInt > rightInt) {
-                    return 1;
-                }
-            }
+    // Compares the packets at the two given indices straight from the mapped bytes.
+    public int compare(int leftIndex, int rightIndex) {
+        return compare(buffer, starts[leftIndex], starts[rightIndex]);
+    }
 
-            // If both values are lists, recursively compare their inner values.
-            if (leftValue instanceof List<?> && rightValue instanceof List<?>) {
-                Integer status = comparePackets((List<Object>)leftValue, (List<Object>)rightValue);
-                if (status != null) {
-                    return status;
-                }
+    // Compares the packets starting at the two given positions in the buffer, following the same rules
+    // as Packet.compareTo: commas are skipped, numbers are read digit by digit as they're reached, and when
+    // an integer meets a list, the integer stays put inside a "virtual" list until it has been compared.
+    // After that, it reads a virtual ']' for each of those lists before carrying on with its real bytes.
+    //
+    // Both sides are always at the same (real plus virtual) depth, so they finish their outermost lists
+    // at the same time, which is when the packets are equal.
+    public static int compare(ByteBuffer buffer, int left, int right) {
+        int depth = 0;
+        int leftWraps = 0, rightWraps = 0;
+        int leftPendingCloses = 0, rightPendingCloses = 0;
+
+        while (true) {
+            if (leftPendingCloses == 0) {
+                while (buffer.get(left) == ',') left++;
+            }
+            if (rightPendingCloses == 0) {
+                while (buffer.get(right) == ',') right++;
             }
 
-            // If exactly one value is an integer, convert the integer to a list
-            // which contains that integer as its only value, then retry the comparison.
-            if (leftInt != null && rightInt == null) {
-                List<Object> enclosedList = new ArrayList<>();
-                enclosedList.add(leftInt);
-                Integer status = comparePackets(enclosedList, (List<Object>)rightValue);
-                if (status != null) {
-                    return status;
+            byte l = leftPendingCloses > 0 ? (byte) ']' : buffer.get(left);
+            byte r = rightPendingCloses > 0 ? (byte) ']' : buffer.get(right);
+
+            if (l == ']' || r == ']') {
+                // If exactly one side's list runs out first, that side comes first.
+                if (l != ']') return 1;
+                if (r != ']') return -1;
+
+                if (leftPendingCloses > 0) leftPendingCloses--; else left++;
+                if (rightPendingCloses > 0) rightPendingCloses--; else right++;
+
+                if (--depth == 0) {
+                    return 0;
+                }
+            } else if (l == '[' && r == '[') {
+                left++;
+                right++;
+                depth++;
+            } else if (l == '[') {
+                // Wrap the right integer in a list and compare it against the left list's contents.
+                rightWraps++;
+                left++;
+                depth++;
+            } else if (r == '[') {
+                leftWraps++;
+                right++;
+                depth++;
+            } else {
+                int leftValue = 0, rightValue = 0;
+                while (isDigit(buffer.get(left))) {
+                    leftValue = Math.addExact(Math.multiplyExact(leftValue, 10), buffer.get(left++) - '0');
                 }
-            } else if (rightInt != null && leftInt == null) {
-                List<Object> enclosedList = new ArrayList<>();
-                enclosedList.add(rightInt);
-                Integer status = comparePackets((List<Object>)leftValue, enclosedList);
-                if (status != null) {
-                    return status;
+                while (isDigit(buffer.get(right))) {
+                    rightValue = Math.addExact(Math.multiplyExact(rightValue, 10), buffer.get(right++) - '0');
                 }
+
+                if (leftValue != rightValue) {
+                    return Integer.compare(leftValue, rightValue);
+                }
+
+                leftPendingCloses = leftWraps;
+                rightPendingCloses = rightWraps;
+                leftWraps = rightWraps = 0;
             }
+        }
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    // Copies a slice of the buffer into a String, for error messages.
+    static String describe(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
+
+// Works out where a set of divider packets would end up if they were added to the end of a list of packets and
+// the whole list was stably sorted, without actually sorting anything. A divider's (1-based) position is one more
+// than the number of packets that don't come after it (packets equal to it stay in front of it), plus the number
+// of dividers that come before it, plus any equal dividers that were given before it.
+//
+// The dividers are sorted first so that each packet only needs a binary search to find the first divider that
+// doesn't come before it; every divider from that one onwards has that packet in front of it. Each packet adds one to that
+// divider's count, and a running total over the dividers then gives the number of packets before each one.
+// The packets are spread across threads, each counting into its own array, which are added up at the end.
+class DividerRanker {
+    // Returns the position of each divider (in the same order as they were given) in the sorted list of
+    // packets and dividers.
+    public static int[] positions(List<Packet> packets, List<Packet> dividers) {
+        Packet[] sortedDividers = dividers.toArray(new Packet[0]);
+        Arrays.sort(sortedDividers);
+
+        // counts[k] is the number of packets whose first divider not before them is sortedDividers[k],
+        // with counts[sortedDividers.length] for the packets that come after every divider.
+        int[] counts = IntStream.range(0, packets.size()).parallel().collect(
+                () -> new int[sortedDividers.length + 1],
+                (threadCounts, i) -> threadCounts[firstDividerAtLeast(sortedDividers, packets.get(i))]++,
+                (a, b) -> {
+                    for (int k = 0; k < a.length; k++) a[k] += b[k];
+                });
+
+        int[] positions = new int[dividers.size()];
+        for (int d = 0; d < dividers.size(); d++) {
+            Packet divider = dividers.get(d);
+
+            // A packet doesn't come after this divider exactly when the first divider not before the packet
+            // is no later than the first divider equal to this one, which is also the number of dividers before it.
+            int dividersBefore = firstDividerAtLeast(sortedDividers, divider);
+            int packetsBefore = 0;
+            for (int k = 0; k <= dividersBefore; k++) {
+                packetsBefore += counts[k];
+            }
+
+            for (int k = 0; k < d; k++) {
+                if (dividers.get(k).compareTo(divider) == 0) dividersBefore++;
+            }
+
+            positions[d] = packetsBefore + dividersBefore + 1;
+        }
+
+        return positions;
+    }
 
-            index++;
+    // Returns the index of the first divider that doesn't come before the packet.
+    private static int firstDividerAtLeast(Packet[] sortedDividers, Packet packet) {
+        int lo = 0, hi = sortedDividers.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sortedDividers[mid].compareTo(packet) >= 0) hi = mid; else lo = mid + 1;
         }
+        return lo;
+    }
+}
 
-        // If the left list runs out of items first, the inputs are in the right order.
-        // If the right list runs out of items first, the inputs are in the wrong order.
-        if (left.size() < right.size()) {
-            return -1;
-        } else if (left.size() > right.size()) {
-            return 1;
+// Turns packets into byte keys that sort the same way as the packets themselves when compared as unsigned bytes,
+// so large sets of packets can be sorted, deduplicated and searched with plain byte comparisons.
+//
+// Since an integer compares exactly like a list holding just that integer, the '[' tokens never decide anything
+// except when one side has an empty list, so the key leaves them out. Instead, a packet becomes a series of
+// leaves (integers and empty lists), each followed by the lowest depth the packet closes back to before its
+// next leaf (0 after the last one):
+// - An empty list is written as 0 followed by its depth. It comes before any integer, and an empty list nested
+//   more deeply comes after a shallower one, since the shallower one runs out first.
+// - An integer is written as 1 followed by its value.
+// - Closing back to a lower depth means running out of items sooner, so a lower depth comes first.
+// Every part is a fixed-width big-endian number, so each packet's key alternates between leaves and depths in
+// the same places, and the first byte that differs between two keys is where the packets first differ.
+//
+// Packets that compare as equal (e.g. [1,[2]] and [[1],2]) get equal keys.
+class PacketKeys {
+    private static final byte EMPTY_LIST = 0;
+    private static final byte INTEGER = 1;
+    private static final int LEAF_BYTES = 1 + Integer.BYTES;
+    private static final int DEPTH_BYTES = Integer.BYTES;
+
+    public static byte[] encode(Packet packet) {
+        int[] tokens = packet.getTokens();
+
+        // Count the leaves first so the key can be written straight into an array of the right size.
+        int leaves = 0;
+        for (int i = 0; i < tokens.length; i++) {
+            if (tokens[i] >= 0 || (tokens[i] == Packet.OPEN && tokens[i + 1] == Packet.CLOSE)) {
+                leaves++;
+            }
         }
 
-        return null;
+        ByteBuffer key = ByteBuffer.allocate(leaves * (LEAF_BYTES + DEPTH_BYTES));
+        int depth = 0;
+        int lowestDepth = -1; // the lowest depth since the last leaf, or -1 before the first leaf
+
+        for (int i = 0; i < tokens.length; i++) {
+            boolean emptyList = tokens[i] == Packet.OPEN && tokens[i + 1] == Packet.CLOSE;
+
+            if ((emptyList || tokens[i] >= 0) && lowestDepth >= 0) {
+                key.putInt(lowestDepth);
+            }
+
+            if (emptyList) {
+                key.put(EMPTY_LIST).putInt(depth + 1);
+                lowestDepth = depth;
+                i++;
+            } else if (tokens[i] >= 0) {
+                key.put(INTEGER).putInt(tokens[i]);
+                lowestDepth = depth;
+            } else if (tokens[i] == Packet.OPEN) {
+                depth++;
+            } else {
+                depth--;
+                lowestDepth = Math.min(lowestDepth, depth);
+            }
+        }
+
+        key.putInt(0);
+        return key.array();
     }
 
-    // Part 1: Returns the sum of the indices of pairs that are in the right order.
-    private static int part1(List<PacketPair> pairs) {
-        // Accumulates the indices of the pairs that are in the right order.
-        int rightOrderIndexAccumulator = 0;
+    public static int compare(byte[] left, byte[] right) {
+        return Arrays.compareUnsigned(left, right);
+    }
 
-        for (int i = 0; i < pairs.size(); i++) {
-            PacketPair pair = pairs.get(i);
-            Integer status = comparePackets(pair.packetLeft(), pair.packetRight());
+    // Returns the packets in sorted order, keeping packets that compare as equal in their original order.
+    // The keys are built in parallel, and then the packets are sorted by key with a parallel merge sort.
+    public static List<Packet> sort(List<Packet> packets) {
+        Keyed[] keyed = keyAll(packets);
+        Arrays.parallelSort(keyed, (a, b) -> compare(a.key(), b.key()));
 
-            if (status != null && status == -1) {
-                rightOrderIndexAccumulator += (i + 1);
+        List<Packet> sorted = new ArrayList<>(keyed.length);
+        for (Keyed k : keyed) {
+            sorted.add(k.packet());
+        }
+        return sorted;
+    }
+
+    // Returns the packets in sorted order, keeping only the first of any packets that compare as equal.
+    public static List<Packet> sortDistinct(List<Packet> packets) {
+        Keyed[] keyed = keyAll(packets);
+        Arrays.parallelSort(keyed, (a, b) -> compare(a.key(), b.key()));
+
+        List<Packet> distinct = new ArrayList<>();
+        for (int i = 0; i < keyed.length; i++) {
+            if (i == 0 || !Arrays.equals(keyed[i - 1].key(), keyed[i].key())) {
+                distinct.add(keyed[i].packet());
             }
         }
+        return distinct;
+    }
 
-        return rightOrderIndexAccumulator;
+    private static Keyed[] keyAll(List<Packet> packets) {
+        return packets.parallelStream()
+                .map(packet -> new Keyed(encode(packet), packet))
+                .toArray(Keyed[]::new);
     }
 
-    // Part 2: Sorts the list of packets and finds the sum of the index of packets [[2]] and [[6]].
-    // Because we wrote a comparator in part 1, simply use it to sort a list of packets.
-    private static int part2(List<PacketPair> pairs) {
-        // Get rid of the pairs of packets and instead consider all the packets as one big list.
-        List<List<Object>> packets = new ArrayList<>();
-        for (PacketPair pair : pairs) {
-            packets.add(pair.packetLeft());
-            packets.add(pair.packetRight());
+    private record Keyed(byte[] key, Packet packet) {}
+}
+
+public class Day13_Distress_Signal {
+    public static void main(String[] args) {
+        File file = new File("./inputs/day13/day13.txt");
+
+        try {
+            PacketLog log = PacketLog.map(file);
+
+            int part1 = part1(log);
+            System.out.println("Part 1 is: " + part1);
+
+            int part2 = part2(log.packets());
+            System.out.println("Part 2 is: " + part2);
+
+        } catch (IOException exception) {
+            exception.printStackTrace();
         }
+    }
 
-        // Add in two additional packets: [[2]]...
-        List<Object> two = new ArrayList<>();
-        two.add(2);
-        List<Object> twoOuter = new ArrayList<>();
-        twoOuter.add(two);
-        packets.add(twoOuter);
+    // Part 1: Returns the sum of the indices of pairs that are in the right order.
+    // Each pair is compared straight from the input's bytes, so nothing needs to be parsed.
+    private static int part1(PacketLog log) {
+        // Accumulates the indices of the pairs that are in the right order.
+        int rightOrderIndexAccumulator = 0;
 
-        // ...and [[6]]
-        List<Object> six = new ArrayList<>();
-        six.add(6);
-        List<Object> sixOuter = new ArrayList<>();
-        sixOuter.add(six);
-        packets.add(sixOuter);
+        for (int i = 0; i < log.pairCount(); i++) {
+            if (log.compare(2 * i, 2 * i + 1) < 0) {
+                rightOrderIndexAccumulator += (i + 1);
+            }
+        }
 
-        // Sort the packets list using the comparator we wrote in part 1.
-        packets.sort(new PacketComparator());
+        return rightOrderIndexAccumulator;
+    }
 
-        return (packets.indexOf(twoOuter) + 1) * (packets.indexOf(sixOuter) + 1);
+    // Part 2: Finds the product of the index of packets [[2]] and [[6]] once they're added to the list of packets
+    // and everything is sorted. Only the dividers' positions matter, so we count the packets before each one
+    // rather than sorting.
+    private static int part2(List<Packet> packets) {
+        int[] positions = DividerRanker.positions(packets, List.of(Packet.divider(2), Packet.divider(6)));
+        return positions[0] * positions[1];
     }
-}
\ No newline at end of file
+}
@@ -7,9 +7,9 @@ import java.util.List;
 import java.util.Scanner;
 
 public class Day14_Regolith_Reservoir {
-    private static final char SAND_AT_REST = 'o';
-    private static final char EMPTY = '.';
-    private static final char ROCK = '#';
+    static final char SAND_AT_REST = 'o';
+    static final char EMPTY = '.';
+    static final char ROCK = '#';
 
     public static void main(String[] args) {
         File file = new File("./inputs/day14/day14.txt");
@@ -105,172 +105,77 @@ public class Day14_Regolith_Reservoir {
         }
     }
 
-    // Returns true if the point immediately below the given sand point
-    // is either a rock or a piece of sand at rest. The return type is a boxed Boolean
-    // so that if the sand exceeds the bounds of the grid, we return null.
-    private static Boolean isBlockedBelow(char[][] grid, Point sand) {
-        if (sand.y + 1 >= grid.length)
-            return null;
-
-        char below = grid[sand.y + 1][sand.x];
-        return below == ROCK || below == SAND_AT_REST;
-    }
-
-    // Returns true if the point immediately to the bottom left of the given sand point
-    // is either a rock or a piece of sand at rest. The return type is a boxed Boolean
-    // so that if the sand exceeds the bounds of the grid, we return null.
-    private static Boolean isBlockedBottomLeft(char[][] grid, Point sand) {
-        if (sand.y + 1 >= grid.length || sand.x - 1 < 0)
-            return null;
-
-        char bottomLeft = grid[sand.y + 1][sand.x - 1];
-        return bottomLeft == ROCK || bottomLeft == SAND_AT_REST;
-    }
-
-    // Returns true if the point immediately to the bottom right of the given sand point
-    // is either a rock or a piece of sand at rest. The return type is a boxed Boolean
-    // so that if the sand exceeds the bounds of the grid, we return null.
-    private static Boolean isBlockedBottomRight(char[][] grid, Point sand) {
-        if (sand.y + 1 >= grid.length || sand.x + 1 >= grid[0].length)
-            return null;
-
-        char bottomRight = grid[sand.y + 1][sand.x + 1];
-        return bottomRight == ROCK || bottomRight == SAND_AT_REST;
-    }
-
-    // Returns true if the sand particle is off the grid.
-    // Return false otherwise.
-    private static boolean isSandOffGrid(char[][] grid, Point newSand) {
-        if (isBlockedBelow(grid, newSand) == null ||
-            isBlockedBottomLeft(grid, newSand) == null ||
-            isBlockedBottomRight(grid, newSand) == null) {
-            return true;
-        }
-        return false;
-    }
-
-    // Returns true if the sand is blocked immediately below it, to its bottom-left, and to its
-    // bottom-right, indicating that it is at rest. Returns false otherwise.
-    private static boolean isSandCompletelyBlocked(char[][] grid, Point newSand) {
-        if (isBlockedBelow(grid, newSand) != null && isBlockedBelow(grid, newSand) &&
-                isBlockedBottomLeft(grid, newSand) != null && isBlockedBottomLeft(grid, newSand) &&
-            isBlockedBottomRight(grid, newSand) != null && isBlockedBottomRight(grid, newSand)) {
-            return true;
-        }
-
-        return false;
-    }
-
-    // Simulate the dropping of a grain of sand into the grid. Returns true if the grain of sand
-    // successfully ended up at rest. Returns null if the grain of sand has fallen off the grid boundaries.
-    private static Boolean dropSand(char[][] grid) {
-        Point newSand = new Point(500, 0);
-
-        // As long as the grain of sand has not fallen off the grid and is at rest with no other place to go,
-        // move it downward if it has an open space below it. Otherwise, we move it to its bottom left if
-        // that space is open. Otherwise, we move it to its bottom right if that space is open.
-        while (!isSandOffGrid(grid, newSand) && !isSandCompletelyBlocked(grid, newSand)) {
-            if (!isBlockedBelow(grid, newSand)) {
-                newSand.y++;
-                continue;
-            }
-
-            if (!isBlockedBottomLeft(grid, newSand)) {
-                newSand.x--;
-                newSand.y++;
-                continue;
-            }
-
-            if (!isBlockedBottomRight(grid, newSand)) {
-                newSand.x++;
-                newSand.y++;
-            }
-        }
-
-        if (isSandOffGrid(grid, newSand)) {
-            return null;
-        }
-
-        // At this point, the bottom, bottom-left, and bottom-right are
-        // all blocked so the sand is at rest.
-        grid[newSand.y][newSand.x] = SAND_AT_REST;
-        return true;
-    }
-
     // Part 1: Repeatedly drop a grain of sand into grid starting at (500, 0) simulating its cascading
     // effects. Returns the number of grains of sand that it takes before the sand starts falling into
     // the infinite abyss.
     private static int part1(char[][] grid) {
-        int numSand = 0;
-
-        while(true) {
-            Boolean status = dropSand(grid);
-
-            // A null status indicates that the sand is off the grid. At this point, it has fallen
-            // into the infinite abyss, so we're done.
-            if (status == null)
-                break;
-
-            numSand++;
-        }
-
-        return numSand;
-    }
-
-    // Simulate the dropping of a grain of sand into the grid. Returns true if the grain of sand
-    // successfully ended up at rest. Returns null if the sand entrance at (500, 0) is plugged up.
-    private static Boolean dropSandWithInfiniteFloor(char[][] grid) {
-        Point newSand = new Point(500, 0);
-
-        // If the sand entrance is plugged up, we're done.
-        if (grid[0][500] == SAND_AT_REST) {
-            return null;
-        }
-
-        // As long as the grain of sand has not fallen off the grid and is at rest with no other place to go,
-        // move it downward if it has an open space below it. Otherwise, we move it to its bottom left if
-        // that space is open. Otherwise, we move it to its bottom right if that space is open.
-        while (!isSandOffGrid(grid, newSand) && !isSandCompletelyBlocked(grid, newSand)) {
-            if (!isBlockedBelow(grid, newSand)) {
-                newSand.y++;
-                continue;
-            }
-
-            if (!isBlockedBottomLeft(grid, newSand)) {
-                newSand.x--;
-                newSand.y++;
-                continue;
-            }
-
-            if (!isBlockedBottomRight(grid, newSand)) {
-                newSand.x++;
-                newSand.y++;
-            }
-        }
-
-        // At this point, the bottom, bottom-left, and bottom-right are
-        // all blocked so the sand is at rest.
-        grid[newSand.y][newSand.x] = SAND_AT_REST;
-        return true;
+        return new SandPourer(grid, 500).pour();
     }
 
     // Part 2: Repeatedly drop a grain of sand into grid with an infinite rock floor starting at (500, 0)
     // simulating its cascading effects. Returns the number of grains of sand it takes until the starting entrance
     // of (500, 0) is plugged up.
     private static int part2(char[][] grid) {
-        int numSand = 0;
+        return new SandPourer(grid, 500).pour();
+    }
+}
+
+// Pours sand into a grid one grain at a time, remembering the path the last grain took on the way down.
+// The next grain follows exactly the same path until it reaches the cell just above where the last grain came
+// to rest (nothing else along the path has changed), so instead of starting every grain back at the source,
+// it starts from there. Each cell on the path is only stepped onto and backed out of once, so pouring takes
+// time proportional to the number of grains rather than the number of grains times how far they fall.
+//
+// Every step moves the grain down exactly one row, so the path only needs to store the column the grain was in
+// at each row: the grain at the top of the path is always at row (depth - 1).
+class SandPourer {
+    private final char[][] grid;
+    private final int[] pathX;
+    private int depth;
+
+    public SandPourer(char[][] grid, int sourceX) {
+        this.grid = grid;
+        this.pathX = new int[grid.length];
+
+        // If the sand entrance is already plugged up, there's nowhere to pour.
+        if (grid[0][sourceX] == Day14_Regolith_Reservoir.EMPTY) {
+            this.pathX[0] = sourceX;
+            this.depth = 1;
+        }
+    }
 
-        while(true) {
-            Boolean status = dropSandWithInfiniteFloor(grid);
+    // Keeps dropping grains until one falls off the grid (into the abyss) or the sand entrance is plugged up.
+    // Returns the number of grains that came to rest.
+    public int pour() {
+        int grainsAtRest = 0;
 
-            // A null status indicates that the entrance (500, 0) is plugged up (i.e. has a grain in
-            // its location), so we're done.
-            if (status == null)
+        while (depth > 0) {
+            int y = depth - 1;
+            int x = pathX[y];
+
+            // The grain is off the grid once any of the cells it could fall into are outside of it.
+            if (y + 1 >= grid.length || x - 1 < 0 || x + 1 >= grid[0].length) {
                 break;
+            }
 
-            numSand++;
+            // Move the grain down if it has an open space below it. Otherwise, move it to its bottom left if
+            // that space is open. Otherwise, move it to its bottom right if that space is open.
+            char[] below = grid[y + 1];
+            if (below[x] == Day14_Regolith_Reservoir.EMPTY) {
+                pathX[depth++] = x;
+            } else if (below[x - 1] == Day14_Regolith_Reservoir.EMPTY) {
+                pathX[depth++] = x - 1;
+            } else if (below[x + 1] == Day14_Regolith_Reservoir.EMPTY) {
+                pathX[depth++] = x + 1;
+            } else {
+                // The bottom, bottom-left, and bottom-right are all blocked so the sand is at rest,
+                // and the next grain picks up from the cell above it.
+                grid[y][x] = Day14_Regolith_Reservoir.SAND_AT_REST;
+                grainsAtRest++;
+                depth--;
+            }
         }
 
-        return numSand;
+        return grainsAtRest;
     }
-}
\ No newline at end of file
+}
@@ -6,20 +6,20 @@ record DeviceFile(String name, long size) { }
 
 class Directory {
     private final String name;
-    private final List<Directory> directories;
-    private final List<DeviceFile> files;
+    private final Map<String, Directory> directories; // keyed by name, in the order they were listed
+    private final Map<String, DeviceFile> files;
     private Directory parent;
     private long size; // The size of a directory is the sum of the sizes of all of its children files
 
     public Directory(String name) {
         this.name = name;
-        directories = new ArrayList<>();
-        files = new ArrayList<>();
+        directories = new LinkedHashMap<>();
+        files = new LinkedHashMap<>();
     }
 
     public String getName() { return this.name; }
-    public List<Directory> getDirectories() { return this.directories; }
-    public List<DeviceFile> getFiles() { return this.files; }
+    public Map<String, Directory> getDirectories() { return this.directories; }
+    public Map<String, DeviceFile> getFiles() { return this.files; }
     public Directory getParent() { return this.parent; }
     public long getSize() { return this.size; }
     public void setParent(Directory parent) { this.parent = parent; }
@@ -30,139 +30,166 @@ class Directory {
     }
 }
 
-public class Day7_No_Space_Left_On_Device {
+// Keeps track of the directory tree as a terminal transcript is replayed, one line at a time.
+// Directory sizes are kept up to date as files are discovered (rather than computed in a separate pass
+// at the end), and every directory size is also kept in a sorted index, so that questions about the
+// directory sizes can be answered at any point while the transcript is still being replayed.
+class FileSystem {
     private static final String CHANGE_DIRECTORY_COMMAND = "cd";
     private static final String LIST_COMMAND = "ls";
     private static final String BACK_DIRECTORY = "..";
     private static final String ROOT_DIRECTORY = "/";
     private static final String CONSOLE_PREFIX = "$";
     private static final String DIRECTORY_IDENTIFIER = "dir";
-    private static final long FILE_SYSTEM_DISK_SPACE = 70000000;
-    private static final long SPACE_REQUIRED_TO_UPDATE = 30000000;
 
-    public static void main(String[] args) {
-        File file = new File("./inputs/day7/day7.txt");
-        Directory root = new Directory(ROOT_DIRECTORY);
+    private final Directory root;
+    private Directory currentActiveDirectory;
 
-        try {
-            Scanner sc = new Scanner(file);
-            sc.nextLine(); // read the first line which is "$ cd /" and move on.
-            Directory currentActiveDirectory = root;
+    // Maps a directory size to the number of directories that currently have that size.
+    private final TreeMap<Long, Integer> sizeIndex;
 
-            while (sc.hasNextLine()) {
-                String line = sc.nextLine();
-                String[] tokens = line.split(" ");
-
-                // If we're given a command, figure out what command it is. (e.g. string starts with '$')
-                if (tokens[0].equals(CONSOLE_PREFIX)) {
-                    if (tokens[1].equals(CHANGE_DIRECTORY_COMMAND)) { // "cd" command
-                        if (tokens[2].equals(BACK_DIRECTORY)) { // "cd .."
-                            currentActiveDirectory = currentActiveDirectory.getParent();
-                        } else { // Going down into a directory (e.g. "cd <directory name>")
-                            currentActiveDirectory = currentActiveDirectory.getDirectories()
-                                    .stream()
-                                    .filter(d -> d.getName().equals(tokens[2]))
-                                    .findFirst()
-                                    .orElse(null);
-                        }
-                    } else if (tokens[1].equals(LIST_COMMAND)) {
-                        // For "ls" commands, no action needs to be done so move on.
-                        // We expect that the next few lines will contain the contents of the directory.
-                        continue;
-                    }
-                } else if (tokens[0].equals(DIRECTORY_IDENTIFIER)) {
-                    // We found a directory.
-                    Directory d = new Directory(tokens[1]);
-                    d.setParent(currentActiveDirectory);
-                    currentActiveDirectory.getDirectories().add(d);
-
-                } else {
-                    // We found a file
-                    long fileSize = Long.parseLong(tokens[0]);
-                    DeviceFile df = new DeviceFile(tokens[1], fileSize);
-                    currentActiveDirectory.getFiles().add(df);
+    public FileSystem() {
+        root = new Directory(ROOT_DIRECTORY);
+        currentActiveDirectory = root;
+        sizeIndex = new TreeMap<>();
+        indexSize(root.getSize());
+    }
+
+    public long getUsedSpace() { return this.root.getSize(); }
+
+    // Processes a single line of the terminal transcript.
+    public void replay(String line) {
+        String[] tokens = line.split(" ");
+
+        // If we're given a command, figure out what command it is. (e.g. string starts with '$')
+        if (tokens[0].equals(CONSOLE_PREFIX)) {
+            if (tokens[1].equals(CHANGE_DIRECTORY_COMMAND)) { // "cd" command
+                if (tokens[2].equals(ROOT_DIRECTORY)) { // "cd /"
+                    currentActiveDirectory = root;
+                } else if (tokens[2].equals(BACK_DIRECTORY)) { // "cd .."
+                    currentActiveDirectory = currentActiveDirectory.getParent();
+                } else { // Going down into a directory (e.g. "cd <directory name>")
+                    currentActiveDirectory = currentActiveDirectory.getDirectories().get(tokens[2]);
                 }
+            } else if (tokens[1].equals(LIST_COMMAND)) {
+                // For "ls" commands, no action needs to be done.
+                // We expect that the next few lines will contain the contents of the directory.
             }
-
-            // Populate the sizes of the directories / subdirectories.
-            accumulateSize(root);
-
-            long part1 = part1(root);
-            System.out.println("Part 1 is: " + part1);
-
-            long part2 = part2(root);
-            System.out.println("Part 2 is: " + part2);
-
-        } catch (IOException exception) {
-            exception.printStackTrace();
+        } else if (tokens[0].equals(DIRECTORY_IDENTIFIER)) {
+            // We found a directory.
+            addDirectory(currentActiveDirectory, tokens[1]);
+        } else {
+            // We found a file
+            addFile(currentActiveDirectory, new DeviceFile(tokens[1], Long.parseLong(tokens[0])));
         }
     }
 
-    // Recursive function that when given a directory, calculates the size of the directory
-    // but summing up its internal files and the size of any subdirectories.
-    private static long accumulateSize(Directory d) {
-        // Base case: reached a directory that has no subdirectories and only files.
-        if (d.getDirectories().size() == 0) {
-            for (DeviceFile file : d.getFiles()) {
-                d.addSize(file.size());
-            }
-            return d.getSize();
+    // Adds a directory with the given name to the parent, unless the parent already has one
+    // (e.g. because the parent has been listed before). Returns the parent's directory with that name.
+    public Directory addDirectory(Directory parent, String name) {
+        Directory existing = parent.getDirectories().get(name);
+        if (existing != null) {
+            return existing;
         }
 
-        // Start by accumulating the size of all the directory's files.
-        for (DeviceFile file : d.getFiles()) {
-            d.addSize(file.size());
-        }
+        Directory d = new Directory(name);
+        d.setParent(parent);
+        parent.getDirectories().put(name, d);
+        indexSize(d.getSize());
+        return d;
+    }
 
-        // Then, accumulate the size of any subdirectories, recursively calculating their respective sizes as well.
-        for (Directory sub : d.getDirectories()) {
-            d.addSize(accumulateSize(sub));
+    // Adds the file to the given directory and propagates its size up to every ancestor directory,
+    // so this is O(depth) and the sizes of all directories are always current.
+    // A file that's already been listed in the directory is only counted once.
+    public void addFile(Directory directory, DeviceFile file) {
+        if (directory.getFiles().putIfAbsent(file.name(), file) != null) {
+            return;
         }
 
-        return d.getSize();
+        for (Directory d = directory; d != null; d = d.getParent()) {
+            unindexSize(d.getSize());
+            d.addSize(file.size());
+            indexSize(d.getSize());
+        }
     }
 
-    // Part 1: Traverse the directory tree using DFS and sum up the sizes
-    // of the directories with size of AT MOST 100,000.
-    private static long part1(Directory root) {
+    // Returns the sum of the sizes of all directories with size of AT MOST the given limit.
+    public long totalSizeAtMost(long limit) {
         long sum = 0;
-        Stack<Directory> stack = new Stack<>();
-        stack.push(root);
-
-        while (!stack.isEmpty()) {
-            Directory current = stack.pop();
+        for (Map.Entry<Long, Integer> entry : sizeIndex.headMap(limit, true).entrySet()) {
+            sum += entry.getKey() * entry.getValue();
+        }
+        return sum;
+    }
 
-            stack.addAll(current.getDirectories());
+    // Returns the size of the smallest directory with size of AT LEAST the given target,
+    // or Long.MAX_VALUE if there is no such directory.
+    public long smallestSizeAtLeast(long target) {
+        Long size = sizeIndex.ceilingKey(target);
+        return size == null ? Long.MAX_VALUE : size;
+    }
 
-            if (current.getSize() <= 100000) {
-                sum += current.getSize();
+    // Returns the sizes of the n largest directories, largest first.
+    public List<Long> largestSizes(int n) {
+        List<Long> sizes = new ArrayList<>();
+        for (Map.Entry<Long, Integer> entry : sizeIndex.descendingMap().entrySet()) {
+            for (int i = 0; i < entry.getValue() && sizes.size() < n; i++) {
+                sizes.add(entry.getKey());
             }
+            if (sizes.size() == n) break;
         }
+        return sizes;
+    }
 
-        return sum;
+    private void indexSize(long size) {
+        sizeIndex.merge(size, 1, Integer::sum);
     }
 
-    // Part 2: Traverse the directory tree using DFS and find the smallest directory
-    // whose size is larger than the target deletion size.
-    private static long part2(Directory root) {
-        long usedSpace = root.getSize();
-        long unusedSpace = FILE_SYSTEM_DISK_SPACE - usedSpace;
-        long targetDirectoryDeletionSize = SPACE_REQUIRED_TO_UPDATE - unusedSpace;
+    private void unindexSize(long size) {
+        sizeIndex.computeIfPresent(size, (k, count) -> count == 1 ? null : count - 1);
+    }
+}
 
-        long smallestSoFar = Long.MAX_VALUE;
-        Stack<Directory> stack = new Stack<>();
-        stack.push(root);
+public class Day7_No_Space_Left_On_Device {
+    private static final long FILE_SYSTEM_DISK_SPACE = 70000000;
+    private static final long SPACE_REQUIRED_TO_UPDATE = 30000000;
 
-        while (!stack.isEmpty()) {
-            Directory current = stack.pop();
+    public static void main(String[] args) {
+        File file = new File("./inputs/day7/day7.txt");
+        FileSystem fileSystem = new FileSystem();
 
-            stack.addAll(current.getDirectories());
+        try {
+            Scanner sc = new Scanner(file);
 
-            if (current.getSize() >= targetDirectoryDeletionSize) {
-                smallestSoFar = Math.min(smallestSoFar, current.getSize());
+            // Directory sizes are kept up to date as each line is replayed,
+            // so part 1 and part 2 could be asked at any point along the way.
+            while (sc.hasNextLine()) {
+                fileSystem.replay(sc.nextLine());
             }
+
+            long part1 = part1(fileSystem);
+            System.out.println("Part 1 is: " + part1);
+
+            long part2 = part2(fileSystem);
+            System.out.println("Part 2 is: " + part2);
+
+        } catch (IOException exception) {
+            exception.printStackTrace();
         }
+    }
+
+    // Part 1: Sum up the sizes of the directories with size of AT MOST 100,000.
+    private static long part1(FileSystem fileSystem) {
+        return fileSystem.totalSizeAtMost(100000);
+    }
+
+    // Part 2: Find the smallest directory whose size is larger than the target deletion size.
+    private static long part2(FileSystem fileSystem) {
+        long usedSpace = fileSystem.getUsedSpace();
+        long unusedSpace = FILE_SYSTEM_DISK_SPACE - usedSpace;
+        long targetDirectoryDeletionSize = SPACE_REQUIRED_TO_UPDATE - unusedSpace;
 
-        return smallestSoFar;
+        return fileSystem.smallestSizeAtLeast(targetDirectoryDeletionSize);
     }
 }
\ No newline at end of file
@@ -1,45 +1,24 @@
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 public class Day8_Treetop_Tree_House {
+    // Forests with at least this many trees are swept in parallel.
+    private static final int PARALLEL_THRESHOLD = 1 << 22;
+
     public static void main(String[] args) {
         File file = new File("./inputs/day8/day8.txt");
-        int rows = 0;
-        int cols = 0;
 
         try {
-            Scanner sc = new Scanner(file);
-
-            // One pass through the input to get the size of the grid
-            while (sc.hasNextLine()) {
-                String line = sc.nextLine();
-                cols = line.length();
-                rows++;
-            }
-
-            // Initialize the grid
-            int[][] grid = new int[rows][cols];
-
-            Scanner sc2 = new Scanner(file);
-            int row = 0;
-
-            // Second pass through the input to store all the values in our grid.
-            while (sc2.hasNextLine()) {
-                String line = sc2.nextLine();
-
-                for (int j = 0; j < grid[row].length; j++) {
-                    grid[row][j] = Integer.parseInt(String.valueOf(line.charAt(j)));
-                }
-
-                row++;
-            }
+            // Read the whole input in one pass, storing each tree's height (0-9) in a single byte.
+            ByteGrid grid = ByteGrid.loadDigits(file);
 
             int part1 = part1(grid);
             System.out.println("Part 1 is: " + part1);
 
-            int part2 = part2(grid);
+            long part2 = part2(grid);
             System.out.println("Part 2 is: " + part2);
 
         } catch (IOException exception) {
@@ -47,158 +26,301 @@ public class Day8_Treetop_Tree_House {
         }
     }
 
-    // Returns true if all trees north of the current tree location is shorter than our current tree.
-    // Returns false otherwise.
-    private static boolean isVisibleFromNorth(int[][] grid, int treeRow, int treeCol) {
-        int treeHeight = grid[treeRow][treeCol];
-        for (int r = treeRow-1; r >= 0; r--) {
-            if (grid[r][treeCol] >= treeHeight) {
-                return false;
-            }
+    // Part 1: Calculates the number of trees visible from outside the grid.
+    // Rather than scanning outwards from every tree in all four directions (which is O(rows * cols * (rows + cols))),
+    // we sweep each row and each column once from both ends, keeping track of the tallest tree seen so far.
+    // A tree is visible from that direction iff it is taller than everything before it in the sweep.
+    // For very large forests, the rows and columns are swept in parallel instead (see ParallelForestSweeper).
+    private static int part1(ByteGrid grid) {
+        if (grid.size() >= PARALLEL_THRESHOLD) {
+            return (int) new ParallelForestSweeper(ForkJoinPool.commonPool()).countVisible(grid);
         }
+        return ForestSweeper.countVisible(grid);
+    }
 
-        return true;
+    // Part 2: Finds the maximum scenic score of the tree grid. The scenic score is the product of the
+    // viewing distances in each of the four cardinal directions, which are also computed with one sweep
+    // per row/column and direction (see ForestSweeper), so this is O(rows * cols).
+    private static long part2(ByteGrid grid) {
+        if (grid.size() >= PARALLEL_THRESHOLD) {
+            return new ParallelForestSweeper(ForkJoinPool.commonPool()).maxScenicScore(grid);
+        }
+        return ForestSweeper.maxScenicScore(grid);
     }
+}
+
+// Computes tree visibility and scenic scores in O(rows * cols) by sweeping each row and column once per direction.
+class ForestSweeper {
+    static final int MAX_TREE_HEIGHT = 9;
+
+    // Returns the number of trees that are visible from at least one edge of the grid.
+    // Every row is swept west-to-east and east-to-west, and every column north-to-south and south-to-north,
+    // each time keeping the running max height. A tree is visible in a sweep if it's taller than the running max.
+    public static int countVisible(ByteGrid grid) {
+        int rows = grid.getRows();
+        int cols = grid.getCols();
+        boolean[] visible = new boolean[grid.size()];
+
+        for (int r = 0; r < rows; r++) {
+            int tallest = -1;
+            for (int c = 0; c < cols && tallest < MAX_TREE_HEIGHT; c++) { // West
+                int i = grid.index(r, c);
+                if (grid.get(i) > tallest) {
+                    visible[i] = true;
+                    tallest = grid.get(i);
+                }
+            }
 
-    // Returns true if all trees south of the current tree location is shorter than our current tree.
-    // Returns false otherwise.
-    private static boolean isVisibleFromSouth(int[][] grid, int treeRow, int treeCol) {
-        int treeHeight = grid[treeRow][treeCol];
-        for (int r = treeRow+1; r < grid.length; r++) {
-            if (grid[r][treeCol] >= treeHeight) {
-                return false;
+            tallest = -1;
+            for (int c = cols - 1; c >= 0 && tallest < MAX_TREE_HEIGHT; c--) { // East
+                int i = grid.index(r, c);
+                if (grid.get(i) > tallest) {
+                    visible[i] = true;
+                    tallest = grid.get(i);
+                }
             }
         }
 
-        return true;
-    }
+        for (int c = 0; c < cols; c++) {
+            int tallest = -1;
+            for (int r = 0; r < rows && tallest < MAX_TREE_HEIGHT; r++) { // North
+                int i = grid.index(r, c);
+                if (grid.get(i) > tallest) {
+                    visible[i] = true;
+                    tallest = grid.get(i);
+                }
+            }
 
-    // Returns true if all tress east of the current tree location is shorter than our current tree.
-    // Returns false otherwise.
-    private static boolean isVisibleFromEast(int[][] grid, int treeRow, int treeCol) {
-        int treeHeight = grid[treeRow][treeCol];
-        for (int c = treeCol+1; c < grid[0].length; c++) {
-            if (grid[treeRow][c] >= treeHeight) {
-                return false;
+            tallest = -1;
+            for (int r = rows - 1; r >= 0 && tallest < MAX_TREE_HEIGHT; r--) { // South
+                int i = grid.index(r, c);
+                if (grid.get(i) > tallest) {
+                    visible[i] = true;
+                    tallest = grid.get(i);
+                }
             }
         }
 
-        return true;
+        int count = 0;
+        for (boolean v : visible) {
+            if (v) count++;
+        }
+
+        return count;
     }
 
-    // Returns true if all trees west of the current tree location is shorter than our current tree.
-    // Returns false otherwise.
-    private static boolean isVisibleFromWest(int[][] grid, int treeRow, int treeCol) {
-        int treeHeight = grid[treeRow][treeCol];
-        for (int c = treeCol-1; c >= 0; c--) {
-            if (grid[treeRow][c] >= treeHeight) {
-                return false;
+    // Returns the maximum scenic score of any tree in the grid.
+    // For each sweep, we remember the index at which we last saw a tree of each height (0-9).
+    // The viewing distance of a tree of height h is then the distance to the nearest of the
+    // last-seen trees with height >= h, or the distance to the edge if there aren't any.
+    // That's at most 10 lookups per tree per direction, so the whole thing is O(rows * cols).
+    public static long maxScenicScore(ByteGrid grid) {
+        int rows = grid.getRows();
+        int cols = grid.getCols();
+        long[] scores = new long[grid.size()]; // west * east, which can overflow an int once a row is wide enough
+        int[] northDistances = new int[rows];
+        int[] lastSeen = new int[MAX_TREE_HEIGHT + 1];
+
+        for (int r = 0; r < rows; r++) {
+            Arrays.fill(lastSeen, 0);
+            for (int c = 0; c < cols; c++) { // Looking west
+                int i = grid.index(r, c);
+                scores[i] = c - nearestBlocker(lastSeen, grid.get(i), true);
+                lastSeen[grid.get(i)] = c;
+            }
+
+            Arrays.fill(lastSeen, cols - 1);
+            for (int c = cols - 1; c >= 0; c--) { // Looking east
+                int i = grid.index(r, c);
+                scores[i] *= nearestBlocker(lastSeen, grid.get(i), false) - c;
+                lastSeen[grid.get(i)] = c;
             }
         }
 
-        return true;
-    }
+        long maxScenicScore = 0;
+        for (int c = 0; c < cols; c++) {
+            Arrays.fill(lastSeen, 0);
+            for (int r = 0; r < rows; r++) { // Looking north
+                int i = grid.index(r, c);
+                northDistances[r] = r - nearestBlocker(lastSeen, grid.get(i), true);
+                lastSeen[grid.get(i)] = r;
+            }
 
-    // Part 1: Calculates the number of trees visible from outside the grid.
-    // The trees on the edge are automatically considered visible so we just count those up.
-    // For all the trees in the interior, iterate through each one and cycle through the four cardinal directions,
-    // determining if the tree is visible from that direction.
-    private static int part1(int[][] grid) {
-        int edgeTrees = grid.length * 2 + (grid[0].length - 2) * 2;
-        int internalVisibleTrees = 0;
-
-        for (int r = 1; r < grid.length - 1; r++) {
-            for (int c = 1; c < grid[r].length - 1; c++) {
-                if (isVisibleFromNorth(grid, r, c) ||
-                    isVisibleFromSouth(grid, r, c) ||
-                    isVisibleFromEast(grid, r, c) ||
-                    isVisibleFromWest(grid, r, c)) {
-                    internalVisibleTrees++;
-                }
+            Arrays.fill(lastSeen, rows - 1);
+            for (int r = rows - 1; r >= 0; r--) { // Looking south
+                int i = grid.index(r, c);
+                long scenicScore = scores[i] * northDistances[r] * (nearestBlocker(lastSeen, grid.get(i), false) - r);
+                maxScenicScore = Math.max(scenicScore, maxScenicScore);
+                lastSeen[grid.get(i)] = r;
             }
         }
 
-        return edgeTrees + internalVisibleTrees;
+        return maxScenicScore;
     }
 
-    // Starting from the current tree, returns the number of trees to the north that are shorter than the current tree,
-    // stopping when we hit a tree that is of equal height or taller.
-    private static int scenicDistanceFromNorth(int[][] grid, int treeRow, int treeCol) {
-        int scenicDistance = 0;
-        int treeHeight = grid[treeRow][treeCol];
-        for (int r = treeRow-1; r >= 0; r--) {
-            scenicDistance++;
-            if (grid[r][treeCol] >= treeHeight) {
-                break;
-            }
+    // Returns the index of the closest tree seen so far that is at least as tall as the given height.
+    // If we're sweeping forwards, the closest tree is the one with the largest index. Otherwise, it's the smallest.
+    private static int nearestBlocker(int[] lastSeen, int height, boolean forwards) {
+        int nearest = lastSeen[height];
+        for (int h = height + 1; h <= MAX_TREE_HEIGHT; h++) {
+            nearest = forwards ? Math.max(nearest, lastSeen[h]) : Math.min(nearest, lastSeen[h]);
         }
-
-        return scenicDistance;
+        return nearest;
+    }
+}
+
+// A parallel version of ForestSweeper for very large forests.
+// Every row's west/east sweeps are independent of every other row's, and every column's north/south sweeps are
+// independent of every other column's, so the rows are swept in parallel and then the columns are swept in parallel.
+// Sweeping a single column walks down the grid one row (stride) at a time, which jumps around in memory,
+// so columns are instead swept in tiles of 64 adjacent columns: each step down reads 64 contiguous bytes,
+// and the tile keeps 64 running maxes (or last-seen tables) side by side.
+class ParallelForestSweeper {
+    private static final int TILE_WIDTH = Long.SIZE;
+    private static final int HEIGHTS = ForestSweeper.MAX_TREE_HEIGHT + 1;
+
+    private final ForkJoinPool pool;
+
+    public ParallelForestSweeper(ForkJoinPool pool) {
+        this.pool = pool;
     }
 
-    // Starting from the current tree, returns the number of trees to the south that are shorter than the current tree,
-    // stopping when we hit a tree that is of equal height or taller.
-    private static int scenicDistanceFromSouth(int[][] grid, int treeRow, int treeCol) {
-        int scenicDistance = 0;
-        int treeHeight = grid[treeRow][treeCol];
-        for (int r = treeRow+1; r < grid.length; r++) {
-            scenicDistance++;
-            if (grid[r][treeCol] >= treeHeight) {
-                break;
+    // Returns the number of trees that are visible from at least one edge of the grid.
+    // Visibility is kept in a bitmap with each row padded out to a whole number of 64-bit words. A row sweep
+    // only touches the words of its own row, and a column tile is exactly one word wide, so no two tasks
+    // ever write to the same word and the bitmap can be shared without any synchronization.
+    public long countVisible(ByteGrid grid) {
+        int rows = grid.getRows();
+        int cols = grid.getCols();
+        int wordsPerRow = (cols + TILE_WIDTH - 1) / TILE_WIDTH;
+        long[] visible = new long[rows * wordsPerRow];
+
+        PoolRunner.run(pool, () -> IntStream.range(0, rows).parallel().forEach(r -> {
+            int rowStart = grid.index(r, 0);
+            int wordStart = r * wordsPerRow;
+
+            int tallest = -1;
+            for (int c = 0; c < cols && tallest < ForestSweeper.MAX_TREE_HEIGHT; c++) { // West
+                int height = grid.get(rowStart + c);
+                if (height > tallest) {
+                    visible[wordStart + c / TILE_WIDTH] |= 1L << (c % TILE_WIDTH);
+                    tallest = height;
+                }
             }
-        }
 
-        return scenicDistance;
-    }
+            tallest = -1;
+            for (int c = cols - 1; c >= 0 && tallest < ForestSweeper.MAX_TREE_HEIGHT; c--) { // East
+                int height = grid.get(rowStart + c);
+                if (height > tallest) {
+                    visible[wordStart + c / TILE_WIDTH] |= 1L << (c % TILE_WIDTH);
+                    tallest = height;
+                }
+            }
+        }));
+
+        PoolRunner.run(pool, () -> IntStream.range(0, wordsPerRow).parallel().forEach(tile -> {
+            int firstCol = tile * TILE_WIDTH;
+            int width = Math.min(TILE_WIDTH, cols - firstCol);
+            int[] tallest = new int[width];
 
-    // Starting from the current tree, returns the number of trees to the east that are shorter than the current tree,
-    // stopping when we hit a tree that is of equal height or taller.
-    private static int scenicDistanceFromEast(int[][] grid, int treeRow, int treeCol) {
-        int scenicDistance = 0;
-        int treeHeight = grid[treeRow][treeCol];
-        for (int c = treeCol+1; c < grid[0].length; c++) {
-            scenicDistance++;
-            if (grid[treeRow][c] >= treeHeight) {
-                break;
+            Arrays.fill(tallest, -1);
+            for (int r = 0; r < rows; r++) { // North
+                visible[r * wordsPerRow + tile] |= sweepTileRow(grid, r, firstCol, tallest);
             }
-        }
 
-        return scenicDistance;
+            Arrays.fill(tallest, -1);
+            for (int r = rows - 1; r >= 0; r--) { // South
+                visible[r * wordsPerRow + tile] |= sweepTileRow(grid, r, firstCol, tallest);
+            }
+        }));
+
+        return PoolRunner.run(pool, () -> Arrays.stream(visible).parallel().map(Long::bitCount).sum());
     }
 
-    // Starting from the current tree, returns the number of trees to the west that are shorter than the current tree,
-    // stopping when we hit a tree that is of equal height or taller.
-    private static int scenicDistanceFromWest(int[][] grid, int treeRow, int treeCol) {
-        int scenicDistance = 0;
-        int treeHeight = grid[treeRow][treeCol];
-        for (int c = treeCol-1; c >= 0; c--) {
-            scenicDistance++;
-            if (grid[treeRow][c] >= treeHeight) {
-                break;
+    // Updates the running max of each column in the tile with one row of trees,
+    // returning a mask of the trees in that row that are taller than everything before them.
+    private static long sweepTileRow(ByteGrid grid, int r, int firstCol, int[] tallest) {
+        int rowStart = grid.index(r, firstCol);
+        long mask = 0;
+        for (int t = 0; t < tallest.length; t++) {
+            int height = grid.get(rowStart + t);
+            if (height > tallest[t]) {
+                mask |= 1L << t;
+                tallest[t] = height;
             }
         }
-
-        return scenicDistance;
+        return mask;
     }
 
-    // Part 2: Finds the maximum scenic score of the tree grid. Since the scenic score is the product
-    // of its respective values of the four cardinal directions, and trees on the edge must have one of its
-    // values be 0, then the scenic score of trees on the edge is 0, so we don't bother calculating those.
-    // We iterate through the tree grid of the trees in the interior, calculating the scenic distance
-    // values and multiplying them all together.
-    private static int part2(int[][] grid) {
-        int maxScenicScore = 0;
-
-        for (int r = 1; r < grid.length - 1; r++) {
-            for (int c = 1; c < grid[r].length - 1; c++) {
-                int scenicScore = scenicDistanceFromNorth(grid, r, c) *
-                        scenicDistanceFromSouth(grid, r, c) *
-                        scenicDistanceFromEast(grid, r, c) *
-                        scenicDistanceFromWest(grid, r, c);
-                maxScenicScore = Math.max(scenicScore, maxScenicScore);
+    // Returns the maximum scenic score of any tree in the grid.
+    // The row sweeps store the product of each tree's west and east viewing distances. The column tiles then
+    // work out the south viewing distances (bottom-up) and the north viewing distances (top-down), combine them
+    // with the stored products, and each tile reduces to its own max score, which are then reduced to the overall max.
+    public long maxScenicScore(ByteGrid grid) {
+        int rows = grid.getRows();
+        int cols = grid.getCols();
+        long[] rowScores = new long[grid.size()]; // west * east, which can overflow an int once a row is wide enough
+
+        PoolRunner.run(pool, () -> IntStream.range(0, rows).parallel().forEach(r -> {
+            int rowStart = grid.index(r, 0);
+            int[] lastSeen = new int[HEIGHTS];
+
+            Arrays.fill(lastSeen, 0);
+            for (int c = 0; c < cols; c++) { // Looking west
+                int height = grid.get(rowStart + c);
+                rowScores[rowStart + c] = c - nearestBlocker(lastSeen, 0, height, true);
+                lastSeen[height] = c;
             }
-        }
 
-        return maxScenicScore;
+            Arrays.fill(lastSeen, cols - 1);
+            for (int c = cols - 1; c >= 0; c--) { // Looking east
+                int height = grid.get(rowStart + c);
+                rowScores[rowStart + c] *= nearestBlocker(lastSeen, 0, height, false) - c;
+                lastSeen[height] = c;
+            }
+        }));
+
+        int tiles = (cols + TILE_WIDTH - 1) / TILE_WIDTH;
+        return PoolRunner.run(pool, () -> IntStream.range(0, tiles).parallel().mapToLong(tile -> {
+            int firstCol = tile * TILE_WIDTH;
+            int width = Math.min(TILE_WIDTH, cols - firstCol);
+            int[] southDistances = new int[rows * width];
+            int[] lastSeen = new int[width * HEIGHTS];
+
+            Arrays.fill(lastSeen, rows - 1);
+            for (int r = rows - 1; r >= 0; r--) { // Looking south
+                int rowStart = grid.index(r, firstCol);
+                for (int t = 0; t < width; t++) {
+                    int height = grid.get(rowStart + t);
+                    southDistances[r * width + t] = nearestBlocker(lastSeen, t * HEIGHTS, height, false) - r;
+                    lastSeen[t * HEIGHTS + height] = r;
+                }
+            }
+
+            long maxScenicScore = 0;
+            Arrays.fill(lastSeen, 0);
+            for (int r = 0; r < rows; r++) { // Looking north
+                int rowStart = grid.index(r, firstCol);
+                for (int t = 0; t < width; t++) {
+                    int height = grid.get(rowStart + t);
+                    int north = r - nearestBlocker(lastSeen, t * HEIGHTS, height, true);
+                    lastSeen[t * HEIGHTS + height] = r;
+
+                    long scenicScore = rowScores[rowStart + t] * north * southDistances[r * width + t];
+                    maxScenicScore = Math.max(scenicScore, maxScenicScore);
+                }
+            }
+
+            return maxScenicScore;
+        }).max().orElse(0));
+    }
+
+    // Same as ForestSweeper.nearestBlocker, but for a last-seen table that starts at the given offset.
+    private static int nearestBlocker(int[] lastSeen, int offset, int height, boolean forwards) {
+        int nearest = lastSeen[offset + height];
+        for (int h = height + 1; h < HEIGHTS; h++) {
+            nearest = forwards ? Math.max(nearest, lastSeen[offset + h]) : Math.min(nearest, lastSeen[offset + h]);
+        }
+        return nearest;
     }
 }
\ No newline at end of file
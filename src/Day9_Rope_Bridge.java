@@ -1,185 +1,450 @@
-import java.awt.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.List;
+import java.util.function.LongConsumer;
 
 enum Direction {
-    UP, DOWN, LEFT, RIGHT
+    UP(0, 1), DOWN(0, -1), LEFT(-1, 0), RIGHT(1, 0);
+
+    private final int dx;
+    private final int dy;
+
+    Direction(int dx, int dy) {
+        this.dx = dx;
+        this.dy = dy;
+    }
+
+    public int getDx() { return this.dx; }
+    public int getDy() { return this.dy; }
 }
 
-// Represents a knot in the rope
-class Knot {
-    private final Point position;
+// A set of grid cells, each packed into a single long ((x << 32) | y) and stored in an open-addressing
+// hash table, so recording a cell doesn't allocate anything (unlike a HashSet<Point>).
+class PackedPointSet {
+    private static final long EMPTY = 0; // (0,0) is tracked separately since it packs to the EMPTY marker.
 
-    public Knot(Point p) {
-        this.position = p;
+    private long[] table;
+    private int size;
+    private boolean containsOrigin;
+
+    public PackedPointSet() {
+        table = new long[1024];
     }
 
-    public Point getPosition() { return position; }
-    public void updatePosition(int x, int y) {
-        position.x = x;
-        position.y = y;
+    public static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
     }
-}
 
-// Represents a rope. A rope has a list of knots along with a series of methods to
-// simulate a step in the transformation of the rope in a given direction.
-class Rope {
-    private final List<Knot> knots;
+    // Adds the cell to the set, returning true if it wasn't already in the set.
+    public boolean add(int x, int y) {
+        long key = pack(x, y);
+        if (key == EMPTY) {
+            if (containsOrigin) return false;
+            containsOrigin = true;
+            return true;
+        }
 
-    public Rope(int numKnots) {
-        knots = new ArrayList<>();
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        while (table[slot] != EMPTY) {
+            if (table[slot] == key) return false;
+            slot = (slot + 1) & mask;
+        }
+
+        table[slot] = key;
+        size++;
 
-        // Initialize each knot to start a position (0,0)
-        for (int i = 0; i < numKnots; i++) {
-            knots.add(new Knot(new Point(0,0)));
+        // Keep the table at most half full so probe sequences stay short.
+        if (size * 2 > table.length) {
+            resize();
         }
+        return true;
     }
 
-    public Knot getHead() { return knots.get(0); }
-    public Knot getTail() { return knots.get(knots.size() - 1); }
-    public Knot getKnotN(int n) { return knots.get(n); }
+    public int size() {
+        return size + (containsOrigin ? 1 : 0);
+    }
 
-    // Returns true oif the two knots are touching.
-    // Touching is defined as if the two knots are adjacent to each other (including diagonal adjacency)
-    // or are overlapping each other.
-    public boolean areKnotsTouching(Knot knot1, Knot knot2) {
-        Point pos1 = knot1.getPosition();
-        Point pos2 = knot2.getPosition();
+    public boolean contains(int x, int y) {
+        long key = pack(x, y);
+        if (key == EMPTY) return containsOrigin;
 
-        // If they are overlapping each other
-        if (pos1.x == pos2.x && pos1.y == pos2.y) {
-            return true;
+        int mask = table.length - 1;
+        for (int slot = hash(key) & mask; table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (table[slot] == key) return true;
         }
+        return false;
+    }
 
-        // If they are diagonally touching
-        if (Math.abs(pos1.x - pos2.x) == 1 && Math.abs(pos1.y - pos2.y) == 1) {
-            return true;
+    // Calls the consumer with the (packed) key of every cell in the set. Use unpackX/unpackY to get the coordinates.
+    public void forEach(LongConsumer consumer) {
+        if (containsOrigin) consumer.accept(EMPTY);
+        for (long key : table) {
+            if (key != EMPTY) consumer.accept(key);
         }
+    }
 
-        // If they are in the same column (x direction) and
-        // only one away from each other in the rows (y-direction)
-        if (pos1.x == pos2.x && Math.abs(pos1.y - pos2.y) == 1) {
-            return true;
+    public static int unpackX(long key) { return (int) (key >> 32); }
+    public static int unpackY(long key) { return (int) key; }
+
+    private void resize() {
+        long[] oldTable = table;
+        table = new long[oldTable.length * 2];
+        int mask = table.length - 1;
+
+        for (long key : oldTable) {
+            if (key == EMPTY) continue;
+            int slot = hash(key) & mask;
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = key;
         }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
+
+// The cells visited by a knot. Cells visited one step at a time are kept in a PackedPointSet, while long straight
+// moves are kept as horizontal or vertical runs of cells, so a move of a million steps is stored as a single run
+// rather than a million cells. The distinct cell count is worked out from the union of both when it's asked for.
+class VisitedCells {
+    private final PackedPointSet points = new PackedPointSet();
+
+    // Each run is stored as three ints: the row (or column) it's in, followed by its first and last column (or row).
+    private int[] horizontalRuns = new int[48];
+    private int horizontalRunCount;
+    private int[] verticalRuns = new int[48];
+    private int verticalRunCount;
 
-        // If they are in the same row (y direction) and
-        // only one away from each other in the columns (x-direction)
-        return pos1.y == pos2.y && Math.abs(pos1.x - pos2.x) == 1;
+    public void add(int x, int y) {
+        points.add(x, y);
     }
 
-    // Returns true if the two knots are in the same line, exactly two steps away from each other.
-    // Returns false otherwise.
-    private boolean isKnotTwoStepsAwayInTheSameDirection(Knot k1, Knot k2) {
-        // If the knots are in the same column, check that the difference in y value is exactly 2.
-        if (k1.getPosition().x == k2.getPosition().x) {
-            return Math.abs(k1.getPosition().y - k2.getPosition().y) == 2;
-        } else if (k1.getPosition().y == k2.getPosition().y) {
-            // If the knots are in the same row, check that the difference in x value is exactly 2.
-            return Math.abs(k1.getPosition().x - k2.getPosition().x) == 2;
+    // Adds the run of cells starting at (x, y) and continuing for the given number of cells in the given direction.
+    public void addRun(int x, int y, Direction direction, int length) {
+        int endX = x + direction.getDx() * (length - 1);
+        int endY = y + direction.getDy() * (length - 1);
+
+        if (direction.getDy() == 0) {
+            horizontalRuns = appendRun(horizontalRuns, horizontalRunCount++, y, Math.min(x, endX), Math.max(x, endX));
+        } else {
+            verticalRuns = appendRun(verticalRuns, verticalRunCount++, x, Math.min(y, endY), Math.max(y, endY));
         }
+    }
 
-        return false;
+    // Returns the number of distinct cells visited. Overlapping runs along the same row (or column) are merged first,
+    // then we add up the horizontal and vertical run lengths and subtract every cell that's in both a horizontal and a
+    // vertical run. Finally, the single cells that aren't already part of any run are added on top.
+    // This is O((H + V + P) log(H + V + P)) for H horizontal runs, V vertical runs and P single cells.
+    public long size() {
+        TreeMap<Integer, int[]> rows = mergeRuns(horizontalRuns, horizontalRunCount);
+        TreeMap<Integer, int[]> cols = mergeRuns(verticalRuns, verticalRunCount);
+
+        long count = totalLength(rows) + totalLength(cols) - countCrossings(rows, cols);
+
+        // Drop the single cells that are part of a horizontal run, and then the ones that are part of a vertical run.
+        // Each pass sorts the cells along the runs' direction and walks them alongside the runs, in order.
+        long[] cells = new long[points.size()];
+        int[] cellCount = new int[1];
+        points.forEach(key -> cells[cellCount[0]++] = packLinePosition(PackedPointSet.unpackY(key), PackedPointSet.unpackX(key)));
+
+        int remaining = removeCovered(cells, cells.length, rows);
+        for (int i = 0; i < remaining; i++) {
+            cells[i] = packLinePosition(unpackPosition(cells[i]), unpackLine(cells[i]));
+        }
+        remaining = removeCovered(cells, remaining, cols);
+
+        return count + remaining;
     }
 
-    // Update a given knot's position by one step in a given direction.
-    private void moveKnotInSingleDirection(Knot knot, Direction direction) {
-        Point knotPosition = knot.getPosition();
-        if (direction.equals(Direction.UP))
-            knot.updatePosition(knotPosition.x, knotPosition.y + 1);
-        else if (direction.equals(Direction.DOWN))
-            knot.updatePosition(knotPosition.x, knotPosition.y - 1);
-        else if (direction.equals(Direction.LEFT))
-            knot.updatePosition(knotPosition.x - 1, knotPosition.y);
-        else if (direction.equals(Direction.RIGHT))
-            knot.updatePosition(knotPosition.x + 1, knotPosition.y);
+    // Counts the cells that are covered by both a horizontal and a vertical run, with a sweep from west to east.
+    // Each horizontal run switches its row on when the sweep reaches its first column and off again after its last,
+    // and the rows that are switched on are kept in a Fenwick tree (over the rows that have runs, in order).
+    // Each vertical run then crosses exactly as many horizontal runs as there are rows switched on between its
+    // first and last row, since the runs in any one row don't overlap after merging.
+    private static long countCrossings(TreeMap<Integer, int[]> rows, TreeMap<Integer, int[]> cols) {
+        int intervalCount = 0;
+        for (int[] intervals : rows.values()) {
+            intervalCount += intervals.length / 2;
+        }
+
+        // Sort the horizontal runs by their first column and by their last column, keeping the run's index in the
+        // low bits of each key so a single primitive sort does the job.
+        int[] rowKeys = new int[rows.size()];
+        int[] runRows = new int[intervalCount];
+        long[] starts = new long[intervalCount];
+        long[] ends = new long[intervalCount];
+        int rowIndex = 0, run = 0;
+        for (Map.Entry<Integer, int[]> row : rows.entrySet()) {
+            rowKeys[rowIndex] = row.getKey();
+            int[] intervals = row.getValue();
+            for (int i = 0; i < intervals.length; i += 2, run++) {
+                runRows[run] = rowIndex;
+                starts[run] = ((long) intervals[i] << 32) | run;
+                ends[run] = ((long) intervals[i + 1] << 32) | run;
+            }
+            rowIndex++;
+        }
+        Arrays.sort(starts);
+        Arrays.sort(ends);
+
+        int[] fenwick = new int[rowKeys.length + 1];
+        int nextStart = 0, nextEnd = 0;
+        long crossings = 0;
+
+        for (Map.Entry<Integer, int[]> col : cols.entrySet()) {
+            int x = col.getKey();
+
+            for (; nextStart < starts.length && (int) (starts[nextStart] >> 32) <= x; nextStart++) {
+                fenwickAdd(fenwick, runRows[(int) starts[nextStart]], 1);
+            }
+            for (; nextEnd < ends.length && (int) (ends[nextEnd] >> 32) < x; nextEnd++) {
+                fenwickAdd(fenwick, runRows[(int) ends[nextEnd]], -1);
+            }
+
+            int[] intervals = col.getValue();
+            for (int i = 0; i < intervals.length; i += 2) {
+                int first = lowerBound(rowKeys, intervals[i]);
+                int last = lowerBound(rowKeys, intervals[i + 1] + 1);
+                crossings += fenwickSum(fenwick, last) - fenwickSum(fenwick, first);
+            }
+        }
+
+        return crossings;
     }
 
-    // Given two knots in a line, a lead and a follower, moves the follower towards the lead.
-    private void moveFollowerTowardsLeadInSingleDirection(Knot lead, Knot follower) {
-        Point leadPosition = lead.getPosition();
-        Point followerPosition = follower.getPosition();
-
-        if (leadPosition.x == followerPosition.x) {
-            // Follower needs to move up
-            if (leadPosition.y > followerPosition.y) {
-                follower.updatePosition(followerPosition.x, followerPosition.y + 1);
-            } else { // Follower needs to move down
-                follower.updatePosition(followerPosition.x, followerPosition.y - 1);
+    // Sorts the first count cells (packed as line and position) and moves the ones that aren't covered by any of
+    // the merged runs to the front of the array. Returns how many of those there are.
+    private static int removeCovered(long[] cells, int count, TreeMap<Integer, int[]> lines) {
+        Arrays.sort(cells, 0, count);
+
+        Iterator<Map.Entry<Integer, int[]>> lineIterator = lines.entrySet().iterator();
+        Map.Entry<Integer, int[]> line = lineIterator.hasNext() ? lineIterator.next() : null;
+        int interval = 0;
+        int remaining = 0;
+
+        for (int i = 0; i < count; i++) {
+            int lineNumber = unpackLine(cells[i]);
+            int position = unpackPosition(cells[i]);
+
+            // Catch the runs up to this cell's line, and then to the first interval that doesn't end before it.
+            while (line != null && line.getKey() < lineNumber) {
+                line = lineIterator.hasNext() ? lineIterator.next() : null;
+                interval = 0;
+            }
+
+            boolean covered = false;
+            if (line != null && line.getKey() == lineNumber) {
+                int[] intervals = line.getValue();
+                while (interval < intervals.length && intervals[interval + 1] < position) {
+                    interval += 2;
+                }
+                covered = interval < intervals.length && intervals[interval] <= position;
             }
-        } else if (leadPosition.y == followerPosition.y) {
-            // Follower needs to move left
-            if (leadPosition.x < followerPosition.x) {
-                follower.updatePosition(followerPosition.x - 1, followerPosition.y);
-            } else { // Follower needs to move right
-                follower.updatePosition(followerPosition.x + 1, followerPosition.y);
+
+            if (!covered) {
+                cells[remaining++] = cells[i];
             }
         }
+
+        return remaining;
+    }
+
+    // Packs a cell so that cells sort by line first and then by position along the line. The position's sign bit is
+    // flipped so that negative positions still sort before positive ones in the low 32 bits.
+    private static long packLinePosition(int line, int position) {
+        return ((long) line << 32) | ((position ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+    }
+
+    private static int unpackLine(long cell) { return (int) (cell >> 32); }
+    private static int unpackPosition(long cell) { return (int) cell ^ Integer.MIN_VALUE; }
+
+    private static void fenwickAdd(int[] fenwick, int index, int delta) {
+        for (int i = index + 1; i < fenwick.length; i += i & -i) {
+            fenwick[i] += delta;
+        }
     }
 
-    // Given two knots (a lead and a follower) that are neither touching nor are in the same row or column,
-    // move the follower towards the lead.
-    private void moveKnotDiagonally(Knot lead, Knot follower) {
-        Point leadPosition = lead.getPosition();
-        Point followerPosition = follower.getPosition();
-
-        // If the lead knot is in the top-right quadrant relative to the follower,
-        // then move the follower one step to the top-right.
-        if (leadPosition.x > followerPosition.x && leadPosition.y > followerPosition.y) {
-            follower.updatePosition(followerPosition.x + 1, followerPosition.y + 1);
-            return;
+    // Returns the sum of the first count entries.
+    private static long fenwickSum(int[] fenwick, int count) {
+        long sum = 0;
+        for (int i = count; i > 0; i -= i & -i) {
+            sum += fenwick[i];
         }
+        return sum;
+    }
 
-        // If the lead knot is in the top-left quadrant relative to the follower,
-        // then move the follower one step to the top-left.
-        if (leadPosition.x < followerPosition.x && leadPosition.y > followerPosition.y) {
-            follower.updatePosition(followerPosition.x - 1, followerPosition.y + 1);
-            return;
+    // Returns the index of the first key that's at least the given value.
+    private static int lowerBound(int[] keys, long value) {
+        int lo = 0, hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < value) lo = mid + 1; else hi = mid;
         }
+        return lo;
+    }
 
-        // If the lead knot is in the bottom-left quadrant relative to the follower,
-        // then move the follower one step to the bottom-left.
-        if (leadPosition.x < followerPosition.x && leadPosition.y < followerPosition.y) {
-            follower.updatePosition(followerPosition.x - 1, followerPosition.y - 1);
-            return;
+    private static int[] appendRun(int[] runs, int index, int line, int start, int end) {
+        if (index * 3 + 3 > runs.length) {
+            runs = Arrays.copyOf(runs, runs.length * 2);
         }
+        runs[index * 3] = line;
+        runs[index * 3 + 1] = start;
+        runs[index * 3 + 2] = end;
+        return runs;
+    }
 
-        // If the lead knot is in the bottom-right quadrant relative to the follower,
-        // then move the follower one step to the bottom-right.
-        if (leadPosition.x > followerPosition.x && leadPosition.y < followerPosition.y) {
-            follower.updatePosition(followerPosition.x + 1, followerPosition.y - 1);
+    // Groups the runs by row (or column) and merges overlapping runs, returning a map from each row (or column)
+    // to its sorted, disjoint intervals, stored as [start0, end0, start1, end1, ...].
+    private static TreeMap<Integer, int[]> mergeRuns(int[] runs, int runCount) {
+        Integer[] order = new Integer[runCount];
+        for (int i = 0; i < runCount; i++) order[i] = i;
+        Arrays.sort(order, Comparator.<Integer>comparingInt(i -> runs[i * 3]).thenComparingInt(i -> runs[i * 3 + 1]));
+
+        TreeMap<Integer, int[]> merged = new TreeMap<>();
+        int i = 0;
+        while (i < runCount) {
+            int line = runs[order[i] * 3];
+            int[] intervals = new int[8];
+            int size = 0;
+
+            for (; i < runCount && runs[order[i] * 3] == line; i++) {
+                int start = runs[order[i] * 3 + 1];
+                int end = runs[order[i] * 3 + 2];
+
+                if (size > 0 && start <= intervals[size - 1]) {
+                    intervals[size - 1] = Math.max(intervals[size - 1], end);
+                } else {
+                    if (size + 2 > intervals.length) intervals = Arrays.copyOf(intervals, intervals.length * 2);
+                    intervals[size++] = start;
+                    intervals[size++] = end;
+                }
+            }
+
+            merged.put(line, Arrays.copyOf(intervals, size));
         }
+
+        return merged;
     }
 
-    // Performs a single rope transformation in the given direction
-    public void step(Direction direction) {
-        Knot headKnot = getHead();
+    private static long totalLength(TreeMap<Integer, int[]> merged) {
+        long total = 0;
+        for (int[] intervals : merged.values()) {
+            for (int i = 0; i < intervals.length; i += 2) {
+                total += (long) intervals[i + 1] - intervals[i] + 1;
+            }
+        }
+        return total;
+    }
+}
 
-        // Move the head knot's location one step in the current direction.
-        moveKnotInSingleDirection(headKnot, direction);
+// Simulates a rope with any number of knots. The knot coordinates are kept in two int arrays
+// (knot i is at (xs[i], ys[i]), with the head at index 0), and the cells the tail visits are
+// recorded in a VisitedCells, so stepping the rope doesn't allocate anything.
+// Since every knot only ever follows the knot ahead of it, knot i traces exactly the same path as the tail of
+// a rope with i + 1 knots. So the engine can optionally record the visits of every knot, which gives the answer
+// for every shorter rope in the same pass.
+class RopeEngine {
+    private final int[] xs;
+    private final int[] ys;
+
+    // visits[i] holds the cells visited by knot i, or null if we aren't tracking that knot.
+    private final VisitedCells[] visits;
+
+    public RopeEngine(int numKnots) {
+        this(numKnots, false);
+    }
 
-        for (int i = 1; i < knots.size(); i++) {
-            Knot leadKnot = getKnotN(i - 1);
-            Knot followerKnot = getKnotN(i);
+    public RopeEngine(int numKnots, boolean trackAllKnots) {
+        xs = new int[numKnots];
+        ys = new int[numKnots];
+        visits = new VisitedCells[numKnots];
 
-            // If the lead knot is ever two steps directly up, down, left, or right from the follower knot,
-            // the follower must also move one step in that direction, so it remains close enough.
-            if (isKnotTwoStepsAwayInTheSameDirection(followerKnot, leadKnot)) {
-                moveFollowerTowardsLeadInSingleDirection(leadKnot, followerKnot);
-                continue;
+        // Every knot starts at (0,0), so each tracked knot has already visited it.
+        for (int i = trackAllKnots ? 1 : numKnots - 1; i < numKnots; i++) {
+            visits[i] = new VisitedCells();
+            visits[i].add(0, 0);
+        }
+    }
+
+    public long getTailVisitCount() { return visits[visits.length - 1].size(); }
+
+    // Returns the number of cells visited by the tail of a rope with each number of knots, indexed by the
+    // number of knots (so index 2 is a rope with just a head and a tail). Requires every knot to be tracked.
+    public long[] getTailVisitCountsByLength() {
+        long[] counts = new long[visits.length + 1];
+        for (int length = 2; length <= visits.length; length++) {
+            counts[length] = visits[length - 1].size();
+        }
+        return counts;
+    }
+
+    // Moves the head by the given motion. The rope is simulated one step at a time until it's stretched out in a
+    // straight line behind the head (which takes at most a few steps per knot). From then on, every step just
+    // moves every knot one cell in the direction of the motion, so the rest of the motion is applied in bulk and
+    // each knot's visits are recorded as a single run of cells. So the cost depends on the number of motions
+    // and knots rather than on how far the rope travels.
+    public void apply(Motion motion) {
+        Direction direction = motion.direction();
+        int remaining = motion.steps();
+
+        while (remaining > 0 && !isStretched(direction)) {
+            step(direction);
+            remaining--;
+        }
+
+        if (remaining == 0) return;
+
+        int dx = direction.getDx() * remaining;
+        int dy = direction.getDy() * remaining;
+        for (int i = 0; i < xs.length; i++) {
+            if (visits[i] != null) {
+                visits[i].addRun(xs[i] + direction.getDx(), ys[i] + direction.getDy(), direction, remaining);
             }
-            // Otherwise, if the lead and follower knots aren't touching and aren't in the same row or column,
-            // the follower always moves one step diagonally to keep up.
-            else if (!areKnotsTouching(followerKnot, leadKnot) &&
-                    leadKnot.getPosition().x != followerKnot.getPosition().x &&
-                    leadKnot.getPosition().y != followerKnot.getPosition().y){
-                moveKnotDiagonally(leadKnot, followerKnot);
-                continue;
+            xs[i] += dx;
+            ys[i] += dy;
+        }
+    }
+
+    // Returns true if every knot is exactly one step behind its lead in the given direction.
+    // We check from the tail forwards since the tail end of the rope is the last part to straighten out.
+    private boolean isStretched(Direction direction) {
+        for (int i = xs.length - 1; i > 0; i--) {
+            if (xs[i - 1] - xs[i] != direction.getDx() || ys[i - 1] - ys[i] != direction.getDy()) {
+                return false;
             }
+        }
+        return true;
+    }
 
-            // If no movement happened, there's no need to move any other further knots.
-            break;
+    // Moves the head one step in the given direction and lets the rest of the rope follow.
+    // A follower only moves when its lead is no longer touching it (i.e. more than one away in either axis),
+    // and when it does, it moves one step towards the lead in each axis where they differ, which covers
+    // the straight and diagonal cases at once. Once a knot doesn't move, none of the knots after it will either.
+    public void step(Direction direction) {
+        xs[0] += direction.getDx();
+        ys[0] += direction.getDy();
+
+        int last = xs.length - 1;
+        for (int i = 1; i <= last; i++) {
+            int dx = xs[i - 1] - xs[i];
+            int dy = ys[i - 1] - ys[i];
+
+            if (dx >= -1 && dx <= 1 && dy >= -1 && dy <= 1) {
+                return;
+            }
+
+            xs[i] += Integer.signum(dx);
+            ys[i] += Integer.signum(dy);
+
+            if (visits[i] != null) {
+                visits[i].add(xs[i], ys[i]);
+            }
         }
     }
 }
@@ -212,105 +477,42 @@ public class Day9_Rope_Bridge {
                 motions.add(new Motion(direction, Integer.parseInt(tokens[1])));
             }
 
-            int part1 = part1(motions);
-            System.out.println("Part 1 is: " + part1);
+            // A single simulation of a rope with ten knots also gives us the answer for a rope with two knots.
+            long[] visitCounts = countTailVisitsByLength(motions, 10);
 
-            Rope rope = new Rope(10);
+            long part1 = part1(visitCounts);
+            System.out.println("Part 1 is: " + part1);
 
-            int part2 = part2(rope, motions);
+            long part2 = part2(visitCounts);
             System.out.println("Part 2 is: " + part2);
         } catch (IOException exception) {
             exception.printStackTrace();
         }
     }
 
-    private static boolean areHeadTailTouching(Point head, Point tail) {
-        // If they are overlapping each other
-        if (head.x == tail.x && head.y == tail.y) {
-            return true;
-        }
-
-        // If they are diagonally touching
-        if (Math.abs(head.x - tail.x) == 1 && Math.abs(head.y - tail.y) == 1) {
-            return true;
-        }
-
-        // If they are in the same column (x direction) and
-        // only one away from each other in the rows (y-direction)
-        if (head.x == tail.x && Math.abs(head.y - tail.y) == 1) {
-            return true;
-        }
-
-        // If they are in the same row (y direction) and
-        // only one away from each other in the columns (x-direction)
-        return head.y == tail.y && Math.abs(head.x - tail.x) == 1;
-    }
-
-    // Part 1: Simulates the movement of a rope with two knots, a head and a tail.
-    // Stores the positions that the tail visited in a set. This algorithm assumes that
-    // the tail will follow the last position of the hand as the rope travels around the grid,
-    // an assumption that works for part 1 of the problem but does not work for part 2.
-    private static int part1(List<Motion> motions) {
-        Set<Point> set = new HashSet<>();
-        Point head = new Point(0,0);
-        Point tail = new Point(0,0);
-        set.add(tail);
+    // Simulates a rope with the given number of knots, returning the number of cells visited by the tail
+    // of every rope of 2 up to that many knots (indexed by the number of knots).
+    private static long[] countTailVisitsByLength(List<Motion> motions, int maxKnots) {
+        RopeEngine rope = new RopeEngine(maxKnots, true);
 
         for (Motion motion : motions) {
-            Direction currentDirection = motion.direction();
-
-            Point prevHeadLocation = new Point(0,0);
-            for (int i = 0; i < motion.steps(); i++) {
-                // Save the location of the head as the tail may move
-                // to that location in order to follow the head around.
-                prevHeadLocation.x = head.x;
-                prevHeadLocation.y = head.y;
-
-                // Update the head location accordingly by direction.
-                if (currentDirection.equals(Direction.UP)) head.y++;
-                else if (currentDirection.equals(Direction.DOWN)) head.y--;
-                else if (currentDirection.equals(Direction.LEFT)) head.x--;
-                else if (currentDirection.equals(Direction.RIGHT)) head.x++;
-
-                // If the head and tail are still touching, tail doesn't change.
-                // But if the head has moved away from the tail, update the tail accordingly.
-                if (!areHeadTailTouching(head, tail)) {
-                    tail.x = prevHeadLocation.x;
-                    tail.y = prevHeadLocation.y;
-                }
-
-                // Save the new location of the tail into our set. We must create a new Point object
-                // since we'll be modifying tail's location in our loop.
-                set.add(new Point(tail.x, tail.y));
-            }
+            rope.apply(motion);
         }
 
-        return set.size();
+        return rope.getTailVisitCountsByLength();
     }
 
-    // Part 2: Simulates the movement of a rope with ten knots. Store the positions that the tail
-    // visited in a set. We rewrote the rope behavior to be more in line with the problem description
-    // of how the tail moves (i.e. it does not necessarily always move to the last position of the head).
-    // In fact, after this re-write using a Rope and Knot class, part 1 of this problem can be solved
-    // using the same code below, just replacing the rope argument with a rope with 2 knots instead of 10.
-    private static int part2(Rope rope, List<Motion> motions) {
-        // We use a set to store unique positions that the last knot of the rope (i.e. tail)
-        // has visited. We start by adding the initial position of the tail to the set.
-        Set<Point> set = new HashSet<>();
-        set.add(rope.getTail().getPosition());
-
-        // For each motion (direction and magnitude), simulate a step in the rope transformation
-        // and store the resulting tail position in our set.
-        for (Motion motion : motions) {
-            Direction currentDirection = motion.direction();
-
-            for (int i = 0; i < motion.steps(); i++) {
-                rope.step(currentDirection);
-                Point tail = rope.getTail().getPosition();
-                set.add(new Point(tail.x, tail.y));
-            }
-        }
+    // Part 1: Counts the number of distinct positions that the tail of a rope with two knots visited.
+    // The second knot of the longer rope follows the head in exactly the same way, so this is its visit count.
+    private static long part1(long[] visitCounts) {
+        return visitCounts[2];
+    }
 
-        return set.size();
+    // Part 2: Counts the number of distinct positions that the tail of a rope with ten knots visited.
+    // Originally, part 1 assumed that the tail always moves to the last position of the head, which only holds
+    // for a rope with two knots. Moving each follower towards its lead (see RopeEngine) is true to the problem
+    // description, so the same simulation solves both parts.
+    private static long part2(long[] visitCounts) {
+        return visitCounts[10];
     }
 }
\ No newline at end of file
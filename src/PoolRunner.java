@@ -0,0 +1,18 @@
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+// Runs a parallel stream pipeline inside a given ForkJoinPool. A parallel stream does its work in the pool of
+// the thread that starts it (the common pool, unless it's started from inside another pool), so submitting the
+// whole pipeline to a pool is how the parallel solvers (e.g. Day 8 and Day 12) keep their work in the pool
+// they were given rather than whichever pool the caller is in.
+public final class PoolRunner {
+    private PoolRunner() { }
+
+    public static void run(ForkJoinPool pool, Runnable task) {
+        pool.submit(task).join();
+    }
+
+    public static <T> T run(ForkJoinPool pool, Callable<T> task) {
+        return pool.submit(task).join();
+    }
+}